@@ -0,0 +1,26 @@
+package name.lemerdy.sebastian.eventstore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+class BenchmarkFiles {
+
+    static StoreOptions temporaryStore(FsyncPolicy fsyncPolicy) throws IOException {
+        return StoreOptions.defaults()
+                .withPath(Files.createTempDirectory("eventstore-benchmark").resolve(".eventstore"))
+                .withFsyncPolicy(fsyncPolicy)
+                .withSnapshotEvery(0);
+    }
+
+    static void delete(StoreOptions options) throws IOException {
+        try (Stream<Path> files = Files.walk(options.getPath().getParent())) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package name.lemerdy.sebastian.eventstore;
+
+import name.lemerdy.sebastian.eventstore.testtools.IncrementingClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.simpleframework.http.Method;
+import org.simpleframework.http.Path;
+import org.simpleframework.http.Protocol;
+import org.simpleframework.http.Request;
+import org.simpleframework.http.Response;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Goes through {@link EventStoreHttp#handle(Request, Response)} with requests and responses stubbed by dynamic
+ * proxies, cheap enough not to hide the cost of authorization, routing and encoding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventStoreHttpBenchmark {
+
+    private static final String AUTHORIZATION = EventStoreHttp.BASIC + Base64.getMimeEncoder().encodeToString("user:password".getBytes());
+
+    @Param({"1000", "10000"})
+    int size;
+
+    private StoreOptions options;
+    private EventStore eventStore;
+    private EventStoreHttp eventStoreHttp;
+    private String previousPassword;
+
+    @Setup(Level.Trial)
+    public void fill() throws IOException {
+        previousPassword = System.setProperty("password", "password");
+        options = BenchmarkFiles.temporaryStore(FsyncPolicy.everyRecords(Integer.MAX_VALUE));
+        eventStore = new EventStore(new IncrementingClock(Instant.parse("2016-01-01T00:00:00Z")), options);
+        for (int i = 0; i < size; i++) {
+            eventStore.store("type" + i % 10, "{\"id\": " + i + ", \"text\": \"some text\"}");
+        }
+        eventStoreHttp = new EventStoreHttp(eventStore);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        eventStore.close();
+        BenchmarkFiles.delete(options);
+        if (previousPassword == null) {
+            System.clearProperty("password");
+        } else {
+            System.setProperty("password", previousPassword);
+        }
+    }
+
+    @Benchmark
+    public void getEvents() {
+        eventStoreHttp.handle(request(Method.GET, emptyMap(), "events"), response());
+    }
+
+    @Benchmark
+    public void getEventsOfType() {
+        eventStoreHttp.handle(request(Method.GET, emptyMap(), "events", "type3"), response());
+    }
+
+    @Benchmark
+    public void getFirstPage() {
+        eventStoreHttp.handle(request(Method.GET, singletonMap(EventStoreHttp.LIMIT, "100"), "events"), response());
+    }
+
+    @Benchmark
+    public void postEvent() {
+        eventStoreHttp.handle(request(Method.POST, emptyMap(), "events", "type3"), response());
+    }
+
+    private static Request request(String method, Map<String, String> parameters, String... segments) {
+        Path path = stub(Path.class, (name, args) -> {
+            switch (name) {
+                case "getPath":
+                    return "/" + String.join("/", segments);
+                case "getSegments":
+                    return segments;
+                default:
+                    return null;
+            }
+        });
+        return stub(Request.class, (name, args) -> {
+            switch (name) {
+                case "getValue":
+                    return Protocol.AUTHORIZATION.equals(args[0]) ? AUTHORIZATION : null;
+                case "getPath":
+                    return path;
+                case "getMethod":
+                    return method;
+                case "getParameter":
+                    return parameters.get(args[0]);
+                case "getContent":
+                    return "{\"id\": 0, \"text\": \"some text\"}";
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private static Response response() {
+        WritableByteChannel discarding = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                int written = src.remaining();
+                src.position(src.limit());
+                return written;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        return stub(Response.class, (name, args) -> "getByteChannel".equals(name) ? discarding : null);
+    }
+
+    private static <T> T stub(Class<T> type, BiFunction<String, Object[], Object> answer) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> answer.apply(method.getName(), args)));
+    }
+
+}
@@ -0,0 +1,70 @@
+package name.lemerdy.sebastian.eventstore;
+
+import name.lemerdy.sebastian.eventstore.testtools.IncrementingClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Instant;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Time to open a store, that is to load its journal, once it holds the given number of events. With a snapshot,
+ * taken once all the events are stored, the journal is not read at all.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EventStoreLoadBenchmark {
+
+    private static final Instant START = Instant.parse("2016-01-01T00:00:00Z");
+
+    @Param({"10000", "1000000", "10000000"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean snapshot;
+
+    private StoreOptions options;
+
+    @Setup(Level.Trial)
+    public void fill() throws IOException {
+        options = BenchmarkFiles.temporaryStore(FsyncPolicy.everyRecords(Integer.MAX_VALUE));
+        try (EventStore eventStore = new EventStore(new IncrementingClock(START), options)) {
+            for (int i = 0; i < size; i++) {
+                eventStore.store("type" + i % 10, "{\"id\": " + i + ", \"text\": \"some text\"}");
+            }
+            if (snapshot) {
+                eventStore.snapshot();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        BenchmarkFiles.delete(options);
+    }
+
+    @Benchmark
+    public EventStore load() {
+        try (EventStore eventStore = new EventStore(new IncrementingClock(START), options)) {
+            return eventStore;
+        }
+    }
+
+}
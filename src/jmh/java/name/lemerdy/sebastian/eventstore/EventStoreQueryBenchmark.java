@@ -0,0 +1,108 @@
+package name.lemerdy.sebastian.eventstore;
+
+import name.lemerdy.sebastian.eventstore.testtools.IncrementingClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Compares the query path with the one it replaced, which flattened a {@code TreeMap<Instant, List<Event>>} by
+ * concatenating lists pairwise, with every payload on the heap or only the most recent ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventStoreQueryBenchmark {
+
+    @Param({"1000", "10000"})
+    int size;
+
+    @Param({"0", "262144"})
+    long memoryLimit;
+
+    private StoreOptions options;
+    private EventStore eventStore;
+    private SortedMap<Instant, List<Event>> legacyStoredEvents;
+    private Instant middle;
+
+    @Setup(Level.Trial)
+    public void fill() throws IOException {
+        options = BenchmarkFiles.temporaryStore(FsyncPolicy.everyRecords(Integer.MAX_VALUE)).withMemoryLimit(memoryLimit);
+        eventStore = new EventStore(new IncrementingClock(Instant.parse("2016-01-01T00:00:00Z")), options);
+        legacyStoredEvents = new TreeMap<>();
+        for (int i = 0; i < size; i++) {
+            eventStore.store("type" + i % 10, "data" + i);
+        }
+        eventStore.events().forEach(event -> legacyStoredEvents.merge(event.date, singletonList(event), EventStoreQueryBenchmark::concat));
+        middle = eventStore.events().get(size / 2).date;
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        eventStore.close();
+        BenchmarkFiles.delete(options);
+    }
+
+    @Benchmark
+    public List<Event> events() {
+        return eventStore.events();
+    }
+
+    @Benchmark
+    public List<Event> eventsOfType() {
+        return eventStore.events("type3");
+    }
+
+    @Benchmark
+    public List<Event> eventsFromInstant() {
+        return eventStore.events(middle);
+    }
+
+    @Benchmark
+    public List<Event> eventsOfRange() {
+        return eventStore.events(middle, middle.plusSeconds(100));
+    }
+
+    @Benchmark
+    public void eventsAsStream(Blackhole blackhole) {
+        eventStore.eventsAsStream().forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public List<Event> legacyFlattenConcat() {
+        return legacyStoredEvents.values().stream().reduce(emptyList(), EventStoreQueryBenchmark::concat);
+    }
+
+    private static List<Event> concat(List<Event> events1, List<Event> events2) {
+        List<Event> events = new ArrayList<>();
+        events.addAll(events1);
+        events.addAll(events2);
+        return events;
+    }
+
+}
@@ -0,0 +1,82 @@
+package name.lemerdy.sebastian.eventstore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Appends with each fsync policy, the policy is given the way the {@code fsync} system property would be.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventStoreStoreBenchmark {
+
+    private static final String DATA = "{\"id\": 42, \"url\": \"http://example.com/a/b\", \"text\": \"some text\"}";
+    private static final List<NewEvent> BATCH = Collections.nCopies(100, new NewEvent("name.lemerdy.sebastian.type", DATA));
+
+    @Param({"write", "group", "1000records", "100ms"})
+    String fsync;
+
+    private StoreOptions options;
+    private EventStore eventStore;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        options = BenchmarkFiles.temporaryStore(FsyncPolicy.parse(fsync));
+        eventStore = new EventStore(Clock.systemUTC(), options);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        eventStore.close();
+        BenchmarkFiles.delete(options);
+    }
+
+    @Benchmark
+    public EventStore store() {
+        return eventStore.store("name.lemerdy.sebastian.type", DATA);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public EventStore storeConcurrently() {
+        return eventStore.store("name.lemerdy.sebastian.type", DATA);
+    }
+
+    /**
+     * Stores a hundred events per operation.
+     */
+    @Benchmark
+    public EventStore storeBatch() {
+        return eventStore.store(BATCH);
+    }
+
+    @Benchmark
+    public void storeAndPersist() {
+        eventStore.store("name.lemerdy.sebastian.type", DATA);
+        eventStore.persist();
+    }
+
+}
@@ -0,0 +1,79 @@
+package name.lemerdy.sebastian.eventstore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Compares the single pass serializer and deserializer with the chains of regular expressions they replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+
+    @Param({"plain", "json"})
+    String payload;
+
+    private final Serializer serializer = new Serializer();
+    private final Deserializer deserializer = new Deserializer();
+
+    private String data;
+    private String serialized;
+
+    @Setup
+    public void createPayload() {
+        data = "plain".equals(payload)
+                ? "the quick brown fox jumps over the lazy dog, again and again and again and again"
+                : "{\"id\": 42, \"url\": \"http://example.com/a/b\",\n\t\"text\": \"first line\\nsecond line\"}";
+        serialized = serializer.apply(data);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return serializer.apply(data);
+    }
+
+    @Benchmark
+    public String deserialize() {
+        return deserializer.apply(serialized);
+    }
+
+    @Benchmark
+    public String legacySerialize() {
+        return data
+                .replaceAll("\\\\", "\\\\\\\\")
+                .replaceAll("\"", "\\\\\"")
+                .replaceAll("/", "\\\\/")
+                .replaceAll("\b", "\\\\b")
+                .replaceAll("\f", "\\\\f")
+                .replaceAll("\n", "\\\\n")
+                .replaceAll("\t", "\\\\t");
+    }
+
+    @Benchmark
+    public String legacyDeserialize() {
+        return serialized
+                .replaceAll("\\\\\\\\", "\\\\")
+                .replaceAll("\\\\\"", "\"")
+                .replaceAll("\\\\/", "/")
+                .replaceAll("\\\\b", "\b")
+                .replaceAll("\\\\f", "\f")
+                .replaceAll("\\\\n", "\n")
+                .replaceAll("\\\\t", "\t");
+    }
+
+}
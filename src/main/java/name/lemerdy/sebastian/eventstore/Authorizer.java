@@ -1,31 +1,117 @@
 package name.lemerdy.sebastian.eventstore;
 
-import lombok.Value;
-
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 
-@Value
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Checks Basic credentials against users loaded once, when the server starts. Users are given by the {@code users}
+ * system property as comma separated {@code name=hash} pairs, where each hash is written by {@link PasswordHash},
+ * or by the {@code password} system property for a single {@code user}.
+ * <p>
+ * Verifying a password is slow on purpose, so the credentials verified recently are remembered by their SHA-256
+ * digest, never in clear, in a bounded cache.
+ */
 class Authorizer {
 
     static final String PASSWORD_SYSTEM_PROPERTY_KEY = "password";
+    static final String USERS_SYSTEM_PROPERTY_KEY = "users";
+
+    private static final String DEFAULT_USER = "user";
+    private static final int VERIFIED_CACHE_SIZE = 1024;
+    private static final PasswordHash UNKNOWN_USER = PasswordHash.of("");
 
-    String name;
-    String password;
+    private final Map<String, PasswordHash> users;
+    private final Map<ByteBuffer, String> verified;
 
-    private final Optional<String> referencePassword;
+    Authorizer(Map<String, PasswordHash> users) {
+        this.users = users;
+        this.verified = new LeastRecentlyUsed<>(VERIFIED_CACHE_SIZE);
+    }
+
+    static Authorizer fromSystemProperties() {
+        Map<String, PasswordHash> users = new HashMap<>();
+        Optional.ofNullable(System.getProperty(PASSWORD_SYSTEM_PROPERTY_KEY))
+                .ifPresent(password -> users.put(DEFAULT_USER, PasswordHash.of(password)));
+        Optional.ofNullable(System.getProperty(USERS_SYSTEM_PROPERTY_KEY)).ifPresent(property -> {
+            for (String user : property.split(",")) {
+                int separator = user.indexOf('=');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("expected name=hash in " + USERS_SYSTEM_PROPERTY_KEY + " system property: " + user);
+                }
+                users.put(user.substring(0, separator).trim(), PasswordHash.parse(user.substring(separator + 1).trim()));
+            }
+        });
+        return new Authorizer(users);
+    }
 
-    Authorizer(String... nameAndPassword) {
-        this.name = nameAndPassword[0];
-        this.password = nameAndPassword[1];
-        this.referencePassword = Optional.ofNullable(System.getProperty(PASSWORD_SYSTEM_PROPERTY_KEY));
+    /**
+     * Gives the name of the user whose Base64 encoded {@code name:password} credentials are given, if they are valid.
+     */
+    Optional<String> authorize(String credentials) {
+        ByteBuffer digest = ByteBuffer.wrap(sha256(credentials));
+        synchronized (verified) {
+            String user = verified.get(digest);
+            if (user != null) {
+                return Optional.of(user);
+            }
+        }
+        String decoded;
+        try {
+            decoded = new String(Base64.getMimeDecoder().decode(credentials), UTF_8);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        int separator = decoded.indexOf(':');
+        if (separator < 0) {
+            return Optional.empty();
+        }
+        String name = decoded.substring(0, separator);
+        PasswordHash reference = users.get(name);
+        boolean matches = Optional.ofNullable(reference).orElse(UNKNOWN_USER).matches(decoded.substring(separator + 1));
+        if (reference == null || !matches) {
+            return Optional.empty();
+        }
+        synchronized (verified) {
+            verified.put(digest, name);
+        }
+        return Optional.of(name);
     }
 
-    boolean isAuthorized() {
-        return hasReferencePassword() && "user".equals(name) && referencePassword.get().equals(password);
+    private static byte[] sha256(String credentials) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(credentials.getBytes(UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
-    private boolean hasReferencePassword() {
-        return referencePassword.isPresent();
+    /**
+     * Keeps the entries accessed most recently, up to the given size.
+     */
+    private static class LeastRecentlyUsed<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        LeastRecentlyUsed(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+
     }
 
 }
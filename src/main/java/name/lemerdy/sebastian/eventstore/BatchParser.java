@@ -0,0 +1,202 @@
+package name.lemerdy.sebastian.eventstore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Reads the body of a batch append, a JSON array of objects with string {@code type} and {@code data} members, as
+ * written by {@link EventStoreHttp} without the date. Other string members are ignored, anything else is rejected with
+ * an {@link IllegalArgumentException}, including what JSON does not allow but Java would accept: whitespace and
+ * digits outside ASCII, and control characters left unescaped in strings.
+ */
+class BatchParser implements Function<String, List<NewEvent>> {
+
+    private static final String TYPE = "type";
+    private static final String DATA = "data";
+
+    @Override
+    public List<NewEvent> apply(String body) {
+        Cursor cursor = new Cursor(body);
+        List<NewEvent> events = new ArrayList<>();
+        cursor.expect('[');
+        if (!cursor.consume(']')) {
+            do {
+                events.add(event(cursor));
+            } while (cursor.consume(','));
+            cursor.expect(']');
+        }
+        cursor.expectEnd();
+        return events;
+    }
+
+    /**
+     * Reads a single JSON object whose members are all strings.
+     */
+    Map<String, String> object(String json) {
+        Cursor cursor = new Cursor(json);
+        Map<String, String> members = members(cursor);
+        cursor.expectEnd();
+        return members;
+    }
+
+    private NewEvent event(Cursor cursor) {
+        Map<String, String> members = members(cursor);
+        String type = members.get(TYPE);
+        String data = members.get(DATA);
+        if (type == null || type.isEmpty() || data == null) {
+            throw new IllegalArgumentException("event without type or data at " + cursor.position);
+        }
+        return new NewEvent(type, data);
+    }
+
+    private Map<String, String> members(Cursor cursor) {
+        Map<String, String> members = new HashMap<>();
+        cursor.expect('{');
+        if (!cursor.consume('}')) {
+            do {
+                String name = cursor.string();
+                cursor.expect(':');
+                members.put(name, cursor.string());
+            } while (cursor.consume(','));
+            cursor.expect('}');
+        }
+        return members;
+    }
+
+    private static class Cursor {
+
+        private static final int UNICODE_ESCAPE_DIGITS = 4;
+
+        private final String json;
+        private int position;
+
+        Cursor(String json) {
+            this.json = json;
+        }
+
+        boolean consume(char expected) {
+            skipWhitespace();
+            if (position < json.length() && json.charAt(position) == expected) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char expected) {
+            if (!consume(expected)) {
+                throw new IllegalArgumentException("expected '" + expected + "' at " + position);
+            }
+        }
+
+        void expectEnd() {
+            skipWhitespace();
+            if (position < json.length()) {
+                throw new IllegalArgumentException("unexpected content at " + position);
+            }
+        }
+
+        /**
+         * Reads a string and decodes its escapes. Unlike {@link Deserializer}, which only reverses what
+         * {@link Serializer} writes, any unicode escape is decoded: a character outside the basic multilingual plane
+         * is escaped as a surrogate pair, which gives back its two chars.
+         */
+        String string() {
+            expect('"');
+            int start = position;
+            StringBuilder decoded = new StringBuilder();
+            int run = position;
+            while (position < json.length() && json.charAt(position) != '"') {
+                char c = json.charAt(position);
+                if (c < ' ') {
+                    throw new IllegalArgumentException("unescaped control character at " + position);
+                }
+                if (c != '\\') {
+                    position++;
+                    continue;
+                }
+                decoded.append(json, run, position);
+                if (position + 1 >= json.length()) {
+                    throw new IllegalArgumentException("unterminated string at " + start);
+                }
+                char escaped = json.charAt(position + 1);
+                position += 2;
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        decoded.append(escaped);
+                        break;
+                    case 'b':
+                        decoded.append('\b');
+                        break;
+                    case 'f':
+                        decoded.append('\f');
+                        break;
+                    case 'n':
+                        decoded.append('\n');
+                        break;
+                    case 'r':
+                        decoded.append('\r');
+                        break;
+                    case 't':
+                        decoded.append('\t');
+                        break;
+                    case 'u':
+                        decoded.append(hexadecimalChar());
+                        break;
+                    default:
+                        throw new IllegalArgumentException("invalid escape at " + (position - 2));
+                }
+                run = position;
+            }
+            if (position >= json.length()) {
+                throw new IllegalArgumentException("unterminated string at " + start);
+            }
+            return decoded.append(json, run, position++).toString();
+        }
+
+        private char hexadecimalChar() {
+            if (position + UNICODE_ESCAPE_DIGITS > json.length()) {
+                throw new IllegalArgumentException("invalid unicode escape at " + (position - 2));
+            }
+            int value = 0;
+            for (int end = position + UNICODE_ESCAPE_DIGITS; position < end; position++) {
+                int digit = hexadecimalDigit(json.charAt(position));
+                if (digit < 0) {
+                    throw new IllegalArgumentException("invalid unicode escape at " + position);
+                }
+                value = value * 16 + digit;
+            }
+            return (char) value;
+        }
+
+        private static int hexadecimalDigit(char c) {
+            if (c >= '0' && c <= '9') {
+                return c - '0';
+            }
+            if (c >= 'a' && c <= 'f') {
+                return c - 'a' + 10;
+            }
+            if (c >= 'A' && c <= 'F') {
+                return c - 'A' + 10;
+            }
+            return -1;
+        }
+
+        private void skipWhitespace() {
+            while (position < json.length() && isWhitespace(json.charAt(position))) {
+                position++;
+            }
+        }
+
+        private static boolean isWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+        }
+
+    }
+
+}
@@ -0,0 +1,25 @@
+package name.lemerdy.sebastian.eventstore;
+
+class CountProjection implements Projection<Long> {
+
+    @Override
+    public Long initial() {
+        return 0L;
+    }
+
+    @Override
+    public Long apply(Long count, Event event) {
+        return count + 1;
+    }
+
+    @Override
+    public String encode(Long count) {
+        return Long.toString(count);
+    }
+
+    @Override
+    public Long decode(String encoded) {
+        return Long.valueOf(encoded.trim());
+    }
+
+}
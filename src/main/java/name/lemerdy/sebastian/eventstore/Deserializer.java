@@ -2,18 +2,79 @@ package name.lemerdy.sebastian.eventstore;
 
 import java.util.function.Function;
 
+/**
+ * Reverses {@link Serializer} in a single pass. Unicode escapes are only decoded for control characters, the only
+ * ones the serializer produces: any other escape is kept as is.
+ */
 public class Deserializer implements Function<String, String> {
 
+    private static final int UNICODE_ESCAPE_LENGTH = 6;
+
     @Override
     public String apply(String s) {
-        return s
-                .replaceAll("\\\\\\\\", "\\\\")
-                .replaceAll("\\\\\"", "\"")
-                .replaceAll("\\\\/", "/")
-                .replaceAll("\\\\b", "\b")
-                .replaceAll("\\\\f", "\f")
-                .replaceAll("\\\\n", "\n")
-                .replaceAll("\\\\t", "\t");
+        int backslash = s.indexOf('\\');
+        if (backslash < 0) {
+            return s;
+        }
+        StringBuilder unescaped = new StringBuilder(s.length());
+        int run = 0;
+        while (backslash >= 0 && backslash + 1 < s.length()) {
+            int escapeLength = 2;
+            char unescapedChar;
+            switch (s.charAt(backslash + 1)) {
+                case '\\':
+                case '"':
+                case '/':
+                    unescapedChar = s.charAt(backslash + 1);
+                    break;
+                case 'b':
+                    unescapedChar = '\b';
+                    break;
+                case 'f':
+                    unescapedChar = '\f';
+                    break;
+                case 'n':
+                    unescapedChar = '\n';
+                    break;
+                case 'r':
+                    unescapedChar = '\r';
+                    break;
+                case 't':
+                    unescapedChar = '\t';
+                    break;
+                case 'u':
+                    int controlCharacter = controlCharacter(s, backslash);
+                    if (controlCharacter < 0) {
+                        backslash = s.indexOf('\\', backslash + 1);
+                        continue;
+                    }
+                    unescapedChar = (char) controlCharacter;
+                    escapeLength = UNICODE_ESCAPE_LENGTH;
+                    break;
+                default:
+                    backslash = s.indexOf('\\', backslash + 1);
+                    continue;
+            }
+            unescaped.append(s, run, backslash).append(unescapedChar);
+            run = backslash + escapeLength;
+            backslash = s.indexOf('\\', run);
+        }
+        return unescaped.append(s, run, s.length()).toString();
+    }
+
+    private static int controlCharacter(String s, int backslash) {
+        if (backslash + UNICODE_ESCAPE_LENGTH > s.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = backslash + 2; i < backslash + UNICODE_ESCAPE_LENGTH; i++) {
+            int digit = Character.digit(s.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * 16 + digit;
+        }
+        return value < 0x20 ? value : -1;
     }
 
 }
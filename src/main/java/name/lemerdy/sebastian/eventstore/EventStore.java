@@ -1,101 +1,650 @@
 package name.lemerdy.sebastian.eventstore;
 
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.UncheckedIOException;
-import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.Clock;
 import java.time.Instant;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.function.BiFunction;
-import java.util.function.BinaryOperator;
-import java.util.function.Function;
-import java.util.function.Predicate;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
-import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.stream.Collectors.toList;
 
-public class EventStore {
-
-    private static final Serializer serializer = new Serializer();
-    private static final Deserializer deserializer = new Deserializer();
+public class EventStore implements AutoCloseable {
 
     private final Clock clock;
-    private final SortedMap<Instant, List<Event>> storedEvents;
-    private final Path eventsPath = Paths.get(".eventstore");
+    private final ConcurrentNavigableMap<Position, Event> storedEvents;
+    private final ConcurrentMap<String, ConcurrentNavigableMap<Position, Event>> storedEventsByType;
+    private final ConcurrentMap<String, AtomicLong> versions;
+    private final Journal journal;
+    private final Path directory;
+    private final long snapshotEvery;
+    private final Optional<ExecutorService> snapshotter;
+    private final Object snapshotLock = new Object();
+    private final Optional<PayloadCache> payloads;
+    private final ConcurrentMap<String, Event> pagedOut = new ConcurrentHashMap<>();
+
+    private final Object sequencer = new Object();
+    private Position lastAssigned = Position.ORIGIN;
+    private volatile Position lastPublished = Position.ORIGIN;
+
+    private final Object publication = new Object();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private volatile boolean closed;
+
+    private final Object projecting = new Object();
+    private final ConcurrentMap<String, Projected<?>> projections = new ConcurrentHashMap<>();
+    private volatile Projected<?>[] projected = new Projected<?>[0];
+
+    private final Metrics metrics = new Metrics();
+    private final Metrics.Histogram appendLatency;
+    private final Metrics.Histogram allQueryLatency;
+    private final Metrics.Histogram typeQueryLatency;
+    private final Metrics.Histogram instantQueryLatency;
+    private final LongAdder projectionFailures;
+
+    static final String ALL_QUERY = "all";
+    static final String TYPE_QUERY = "type";
+    static final String INSTANT_QUERY = "instant";
 
     public EventStore(Clock clock) {
+        this(clock, FsyncPolicy.everyWrite());
+    }
+
+    public EventStore(Clock clock, FsyncPolicy fsyncPolicy) {
+        this(clock, StoreOptions.defaults().withFsyncPolicy(fsyncPolicy));
+    }
+
+    public EventStore(Clock clock, StoreOptions options) {
+        long startup = System.nanoTime();
         this.clock = clock;
-        this.storedEvents = new TreeMap<>();
-        this.load();
+        this.appendLatency = metrics.histogram("eventstore_append_seconds", "Time spent storing events, until they are durable.");
+        this.allQueryLatency = queryLatency(metrics, ALL_QUERY);
+        this.typeQueryLatency = queryLatency(metrics, TYPE_QUERY);
+        this.instantQueryLatency = queryLatency(metrics, INSTANT_QUERY);
+        this.projectionFailures = metrics.counter("eventstore_projection_failures_total", "Projections stopped because they threw while folding an event.");
+        this.journal = new Journal(options, metrics);
+        this.directory = options.getPath();
+        this.snapshotEvery = options.getSnapshotEvery();
+        this.snapshotter = Optional.of(snapshotEvery)
+                .filter(every -> every > 0)
+                .map(every -> Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "eventstore-snapshot");
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+        this.payloads = Optional.of(options.getMemoryLimit())
+                .filter(limit -> limit > 0)
+                .map(limit -> new PayloadCache(limit, journal::data));
+        payloads.ifPresent(cache -> {
+            metrics.counter("eventstore_payload_cache_hits_total", "Payloads read from memory.", cache::hits);
+            metrics.counter("eventstore_payload_cache_misses_total", "Payloads read back from the journal.", cache::misses);
+            metrics.counter("eventstore_payload_cache_evictions_total", "Payloads evicted from memory.", cache::evictions);
+            metrics.gauge("eventstore_payload_cache_bytes", "Estimated heap size of the payloads in memory.", cache::bytes);
+        });
+        long load = System.nanoTime();
+        SortedEvents loaded = new SortedEvents();
+        Map<String, SortedEvents> loadedByType = new HashMap<>();
+        this.load((position, event) -> {
+            Event indexed = hold(position, event);
+            loaded.add(position, indexed);
+            loadedByType.computeIfAbsent(event.type, type -> new SortedEvents()).add(position, indexed);
+        });
+        this.storedEvents = loaded.toSkipList();
+        this.storedEventsByType = new ConcurrentHashMap<>();
+        loadedByType.forEach((type, eventsOfType) -> storedEventsByType.put(type, eventsOfType.toSkipList()));
+        this.versions = new ConcurrentHashMap<>();
+        loadedByType.forEach((type, eventsOfType) -> versions.put(type, new AtomicLong(eventsOfType.size())));
+        long loadNanos = System.nanoTime() - load;
+        long startupNanos = System.nanoTime() - startup;
+        metrics.durationGauge("eventstore_load_seconds", "Time spent restoring the snapshot and replaying the journal at startup.", () -> loadNanos);
+        metrics.durationGauge("eventstore_startup_seconds", "Time spent opening the store.", () -> startupNanos);
+        metrics.gauge("eventstore_published_events", "Events readers can see.", () -> lastPublished.getSequence() + 1);
     }
 
     public List<Event> events() {
-        return FLATTEN.apply(eventsAsStream());
+        return timed(allQueryLatency, eventsAsStream());
     }
 
     public List<Event> events(String type) {
-        return FILTER.andThen(FLATTEN).apply(eventsAsStream(), event -> type.equals(event.type));
+        return timed(typeQueryLatency, eventsAsStream(type));
     }
 
     public List<Event> events(Instant fromThisInstant) {
-        return FILTER.andThen(FLATTEN).apply(eventsAsStream(), event -> fromThisInstant.equals(event.date) || fromThisInstant.isBefore(event.date));
+        return timed(instantQueryLatency, eventsAsStream(fromThisInstant));
+    }
+
+    /**
+     * Events dated from {@code from} included to {@code to} excluded.
+     */
+    public List<Event> events(Instant from, Instant to) {
+        return timed(instantQueryLatency, eventsAsStream(from, to));
+    }
+
+    private List<Event> timed(Metrics.Histogram latency, Stream<Event> events) {
+        long start = System.nanoTime();
+        List<Event> collected = events.collect(toList());
+        latency.recordSince(start);
+        return collected;
+    }
+
+    /**
+     * Latency of the queries of the given kind, {@value #ALL_QUERY}, {@value #TYPE_QUERY} or {@value #INSTANT_QUERY},
+     * recorded once the events are read. Lazy streams are not timed by the store but by whoever consumes them.
+     */
+    Metrics.Histogram queryLatency(String kind) {
+        switch (kind) {
+            case ALL_QUERY:
+                return allQueryLatency;
+            case TYPE_QUERY:
+                return typeQueryLatency;
+            case INSTANT_QUERY:
+                return instantQueryLatency;
+            default:
+                throw new IllegalArgumentException("unknown kind of query: " + kind);
+        }
+    }
+
+    private static Metrics.Histogram queryLatency(Metrics metrics, String kind) {
+        return metrics.histogram("eventstore_query_seconds{kind=\"" + kind + "\"}", "Time spent reading events, by kind of query.");
+    }
+
+    /**
+     * Lazily walks the events published when this method is called, without copying them: the stream is consistent
+     * even if events are stored while it is consumed.
+     */
+    public Stream<Event> eventsAsStream() {
+        return valuesOf(publishedEvents(lastPublished));
+    }
+
+    public Stream<Event> eventsAsStream(String type) {
+        return valuesOf(publishedEvents(type, lastPublished));
+    }
+
+    public Stream<Event> eventsAsStream(Instant fromThisInstant) {
+        return valuesOf(publishedEvents(Position.before(fromThisInstant), lastPublished));
+    }
+
+    /**
+     * Seeks to the first event of the range instead of filtering the events before it, then walks the events up to
+     * the end of the range only.
+     */
+    public Stream<Event> eventsAsStream(Instant from, Instant to) {
+        return valuesOf(publishedEvents(Position.before(from), Position.earliest(lastPublished, Position.before(to))));
+    }
+
+    private Stream<Event> valuesOf(NavigableMap<Position, Event> events) {
+        if (!payloads.isPresent()) {
+            return events.values().stream();
+        }
+        return events.entrySet().stream().map(entry -> resolve(entry).getValue());
     }
 
     public EventStore store(String type, String data) {
-        return store(new Event(clock.instant(), type, data));
+        append(type, data, OptionalLong.empty());
+        return this;
+    }
+
+    /**
+     * Stores the event only if its stream, the events of its type, holds {@code expectedVersion} events.
+     *
+     * @throws WrongExpectedVersionException when another event of this type was stored in the meantime
+     */
+    public EventStore store(String type, String data, long expectedVersion) {
+        append(type, data, OptionalLong.of(expectedVersion));
+        return this;
+    }
+
+    /**
+     * Number of events stored in the stream of the given type.
+     */
+    public long version(String type) {
+        return Optional.ofNullable(versions.get(type)).map(AtomicLong::get).orElse(0L);
     }
 
-    private EventStore store(Event event) {
-        storedEvents.merge(event.date, singletonList(event), CONCAT);
+    /**
+     * Appends the event and returns the version of its stream once it is stored. The expected version is checked
+     * under a lock of the stream only, so that writers of different streams never wait for each other more than for
+     * the sequencer that orders the journal. The sequencer is only held to write the event: the fsync and the
+     * publication happen once it is released, while the next writers go on.
+     * <p>
+     * The position is only taken once the journal accepted the event: its sequence is the number of its record. The
+     * version is taken before the event is durable, so that the next writer of the stream checks against it, and
+     * given back if the journal fails to write the event.
+     */
+    long append(String type, String data, OptionalLong expectedVersion) {
+        long start = System.nanoTime();
+        AtomicLong version = versions.computeIfAbsent(type, stream -> new AtomicLong());
+        CompletableFuture<Void> durable;
+        long appended;
+        synchronized (version) {
+            if (expectedVersion.isPresent() && expectedVersion.getAsLong() != version.get()) {
+                throw new WrongExpectedVersionException(type, expectedVersion.getAsLong(), version.get());
+            }
+            synchronized (sequencer) {
+                Position position = lastAssigned.next(clock.instant());
+                Event event = new Event(position.getDate(), type, data);
+                durable = journal.append(singletonList(event), () -> publish(position, event));
+                lastAssigned = position;
+            }
+            appended = version.incrementAndGet();
+        }
+        journal.commit();
+        awaitOrGiveBack(durable, singletonList(version));
+        appendLatency.recordSince(start);
+        return appended;
+    }
+
+    /**
+     * Stores the events as a whole, with a single write to the journal: readers see all of them or none of them, and
+     * so does the next startup. They share the same date and follow each other in the given order.
+     */
+    public EventStore store(List<NewEvent> events) {
+        if (events.isEmpty()) {
+            return this;
+        }
+        long start = System.nanoTime();
+        List<AtomicLong> streams = events.stream()
+                .map(event -> event.type)
+                .distinct()
+                .sorted()
+                .map(type -> versions.computeIfAbsent(type, stream -> new AtomicLong()))
+                .collect(toList());
+        List<AtomicLong> eventStreams = events.stream().map(event -> versions.get(event.type)).collect(toList());
+        CompletableFuture<Void> durable = lockingStreams(streams.iterator(), () -> {
+            CompletableFuture<Void> appended;
+            synchronized (sequencer) {
+                Instant now = clock.instant();
+                List<Position> positions = new ArrayList<>(events.size());
+                List<Event> stored = new ArrayList<>(events.size());
+                Position last = lastAssigned;
+                for (NewEvent event : events) {
+                    last = last.next(now);
+                    positions.add(last);
+                    stored.add(new Event(last.getDate(), event.type, event.data));
+                }
+                appended = journal.append(stored, () -> publish(positions, stored));
+                lastAssigned = last;
+            }
+            eventStreams.forEach(AtomicLong::incrementAndGet);
+            return appended;
+        });
+        journal.commit();
+        awaitOrGiveBack(durable, eventStreams);
+        appendLatency.recordSince(start);
         return this;
     }
 
-    private void load() {
+    /**
+     * Takes the locks of the given streams, always in the same order so that two batches never wait for each other.
+     */
+    private static <T> T lockingStreams(Iterator<AtomicLong> streams, Supplier<T> action) {
+        if (!streams.hasNext()) {
+            return action.get();
+        }
+        synchronized (streams.next()) {
+            return lockingStreams(streams, action);
+        }
+    }
+
+    /**
+     * Waits for the events to be durable. When the journal failed to write them, the versions they took are given
+     * back: the journal then rejects any other write, so that no later event of these streams was stored on top.
+     */
+    private void awaitOrGiveBack(CompletableFuture<Void> durable, List<AtomicLong> eventStreams) {
         try {
-            Files.readAllLines(eventsPath).stream()
-                    .map(currentLine -> currentLine.split(",", 3))
-                    .map(elements -> new Event(Instant.parse(elements[0]), elements[1], deserializer.apply(elements[2])))
-                    .forEach(this::store);
-        } catch (NoSuchFileException ignored) {
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
+            durable.join();
+        } catch (CompletionException e) {
+            if (journal.hasFailed()) {
+                for (AtomicLong version : eventStreams) {
+                    synchronized (version) {
+                        version.decrementAndGet();
+                    }
+                }
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
         }
     }
 
-    public void persist() {
-        try (PrintWriter in = new PrintWriter(Files.newBufferedWriter(eventsPath))) {
-            eventsAsStream().forEach(events ->
-                    events.forEach(event ->
-                            in.printf("%s,%s,%s%n", event.date, event.type, serializer.apply(event.data))));
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
+    /**
+     * Restores the latest snapshot, if any, then replays the journal records written after it.
+     */
+    private void load(BiConsumer<Position, Event> loader) {
+        synchronized (sequencer) {
+            Snapshot.read(directory, loader).ifPresent(last -> lastAssigned = last);
+            long fromRecord = lastAssigned.getSequence() + 1;
+            long recordCount = journal.replay(fromRecord, event -> {
+                Position position = new Position(event.date, lastAssigned.getSequence() + 1);
+                lastAssigned = event.date.isBefore(lastAssigned.getDate()) ? new Position(lastAssigned.getDate(), position.getSequence()) : position;
+                loader.accept(position, event);
+            });
+            if (recordCount < fromRecord) {
+                throw new IllegalStateException("journal " + directory + " holds " + recordCount + " records, less than its snapshot");
+            }
+            lastPublished = lastAssigned;
+        }
+    }
+
+    /**
+     * Called in sequence order once the journal has written the event: readers never see an event whose predecessors
+     * are not visible yet.
+     */
+    private void publish(Position position, Event event) {
+        index(position, event);
+        announce(position, 1);
+        project(position, event);
+    }
+
+    /**
+     * Publishes a batch at once: its events are indexed first, then the watermark moves past all of them.
+     */
+    private void publish(List<Position> positions, List<Event> events) {
+        for (int i = 0; i < positions.size(); i++) {
+            index(positions.get(i), events.get(i));
+        }
+        announce(positions.get(positions.size() - 1), positions.size());
+        for (int i = 0; i < positions.size(); i++) {
+            project(positions.get(i), events.get(i));
         }
     }
 
-    private Stream<List<Event>> eventsAsStream() {
-        return storedEvents.values().stream();
+    /**
+     * Folds the published event into every projection. It reads the projections after the watermark moved past the
+     * event, while {@link #register} installs a projection before reading the watermark to catch up: one of them sees
+     * the other, so a projection being registered either finds the event in the indexes or is already registered when
+     * it comes here. Projections skip the events they already folded.
+     * <p>
+     * A projection that throws stops at the last event it folded, without failing the publication of the event nor
+     * the other projections.
+     */
+    private void project(Position position, Event event) {
+        if (projected.length == 0) {
+            return;
+        }
+        synchronized (projecting) {
+            for (Projected<?> projection : projected) {
+                try {
+                    projection.apply(position, event);
+                } catch (RuntimeException e) {
+                    projection.stop(e);
+                    projectionFailures.increment();
+                }
+            }
+        }
     }
 
-    private static final BinaryOperator<List<Event>> CONCAT = (events1, events2) -> {
-        List<Event> events = new ArrayList<>();
-        events.addAll(events1);
-        events.addAll(events2);
-        return events;
-    };
+    /**
+     * Registers a projection of every event, see {@link #project(String, String, Projection)}.
+     */
+    public <S> Supplier<S> project(String name, Projection<S> projection) {
+        return register(name, Optional.empty(), projection);
+    }
 
-    private static final Function<Stream<List<Event>>, List<Event>> FLATTEN = events ->
-            events.reduce(emptyList(), CONCAT);
+    /**
+     * Registers a projection of the events of the given type, then keeps it up to date as events are published. It
+     * resumes from its checkpoint, written next to the snapshots, or folds every event of the type stored so far.
+     * The returned supplier gives its current state without reading any event.
+     *
+     * @throws IllegalArgumentException when a projection with this name is already registered or the name is not
+     *                                  made of letters, digits, dots, dashes and underscores only
+     */
+    public <S> Supplier<S> project(String name, String type, Projection<S> projection) {
+        return register(name, Optional.of(type), projection);
+    }
 
-    private static final BiFunction<Stream<List<Event>>, Predicate<Event>, Stream<List<Event>>> FILTER = (events, filter) ->
-            events.map(eventsWithSameDate -> eventsWithSameDate.stream().filter(filter).collect(toList()));
+    /**
+     * Folds the events stored so far without blocking writers, then registers the projection and folds the events
+     * published in the meantime, including those whose publisher found no projection to fold them into.
+     */
+    private <S> Supplier<S> register(String name, Optional<String> type, Projection<S> projection) {
+        Projected<S> registered = Projected.restore(directory, name, type, projection, lastPublished);
+        if (projections.putIfAbsent(name, registered) != null) {
+            throw new IllegalArgumentException("projection " + name + " is already registered");
+        }
+        try {
+            Position caughtUp = catchUp(registered, registered.position());
+            synchronized (projecting) {
+                List<Projected<?>> all = new ArrayList<>(Arrays.asList(projected));
+                all.add(registered);
+                projected = all.toArray(new Projected<?>[0]);
+                catchUp(registered, caughtUp);
+            }
+        } catch (RuntimeException e) {
+            synchronized (projecting) {
+                projected = Stream.of(projected).filter(other -> other != registered).toArray(Projected<?>[]::new);
+            }
+            projections.remove(name, registered);
+            throw e;
+        }
+        return registered::state;
+    }
+
+    private Position catchUp(Projected<?> projection, Position after) {
+        Position until = lastPublished;
+        NavigableMap<Position, Event> events = projection.getType()
+                .map(type -> publishedEvents(type, after, until))
+                .orElseGet(() -> publishedEvents(after, until));
+        events.entrySet().stream().map(this::resolve).forEach(entry -> projection.apply(entry.getKey(), entry.getValue()));
+        return until;
+    }
+
+    Optional<Projected<?>> projection(String name) {
+        return Optional.ofNullable(projections.get(name));
+    }
+
+    /**
+     * Writes the checkpoint of every projection. Their states are taken before the journal is forced, so that the
+     * journal holds every event they folded.
+     */
+    private void checkpointProjections() {
+        Projected<?>[] current = projected;
+        if (current.length == 0) {
+            return;
+        }
+        List<Map.Entry<Position, String>> states = Stream.of(current).map(Projected::encoded).collect(toList());
+        journal.force();
+        for (int i = 0; i < current.length; i++) {
+            current[i].checkpoint(directory, states.get(i));
+        }
+    }
+
+    private void announce(Position last, int published) {
+        lastPublished = last;
+        if (subscribers.get() > 0) {
+            synchronized (publication) {
+                publication.notifyAll();
+            }
+        }
+        if (snapshotter.isPresent() && (last.getSequence() + 1) % snapshotEvery < published) {
+            try {
+                snapshotter.get().execute(this::snapshot);
+            } catch (RejectedExecutionException e) {
+                // closing: the next startup replays the journal instead
+            }
+        }
+    }
+
+    private void index(Position position, Event event) {
+        Event indexed = hold(position, event);
+        storedEvents.put(position, indexed);
+        storedEventsByType.computeIfAbsent(event.type, type -> new ConcurrentSkipListMap<>()).put(position, indexed);
+    }
+
+    /**
+     * Gives what the indexes keep of an event: the event itself, or when memory is limited a placeholder shared by
+     * all the events of its type while the payload goes to the cache.
+     */
+    private Event hold(Position position, Event event) {
+        if (!payloads.isPresent()) {
+            return event;
+        }
+        payloads.get().put(position.getSequence(), event.data);
+        return pagedOut.computeIfAbsent(event.type, type -> new Event(null, type, null));
+    }
+
+    /**
+     * Turns an entry of the indexes back into the stored event, faulting its payload in when memory is limited.
+     */
+    Map.Entry<Position, Event> resolve(Map.Entry<Position, Event> entry) {
+        if (!payloads.isPresent()) {
+            return entry;
+        }
+        Position position = entry.getKey();
+        return new SimpleImmutableEntry<>(position, new Event(position.getDate(), entry.getValue().type, payloads.get().get(position.getSequence())));
+    }
+
+    Metrics metrics() {
+        return metrics;
+    }
+
+    Optional<PayloadCache> payloadCache() {
+        return payloads;
+    }
+
+    Position lastPosition() {
+        return lastPublished;
+    }
+
+    /**
+     * Position of the last event of the given type up to the given one, or {@link Position#ORIGIN} when there is none.
+     * Only the index of that type is read.
+     */
+    Position lastPosition(String type, Position until) {
+        return Optional.ofNullable(storedEventsByType.get(type))
+                .map(eventsOfType -> eventsOfType.floorKey(until))
+                .orElse(Position.ORIGIN);
+    }
+
+    /**
+     * Blocks until an event is published after the given position, the timeout elapses or the store is closed.
+     * Writers only pay for the wake up when someone is waiting.
+     */
+    Position awaitPublishedAfter(Position position, long timeoutMillis) throws InterruptedException {
+        subscribers.incrementAndGet();
+        try {
+            long deadline = System.nanoTime() + MILLISECONDS.toNanos(timeoutMillis);
+            synchronized (publication) {
+                long remaining = deadline - System.nanoTime();
+                while (lastPublished.compareTo(position) <= 0 && !closed && remaining > 0) {
+                    NANOSECONDS.timedWait(publication, remaining);
+                    remaining = deadline - System.nanoTime();
+                }
+            }
+        } finally {
+            subscribers.decrementAndGet();
+        }
+        return lastPublished;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Sorted view of the events stored up to the given published position, readers seek into it with
+     * {@link NavigableMap#tailMap(Object, boolean)}.
+     */
+    NavigableMap<Position, Event> publishedEvents(Position until) {
+        return storedEvents.headMap(until, true);
+    }
+
+    NavigableMap<Position, Event> publishedEvents(String type, Position until) {
+        return Optional.ofNullable(storedEventsByType.get(type))
+                .<NavigableMap<Position, Event>>map(eventsOfType -> eventsOfType.headMap(until, true))
+                .orElseGet(Collections::emptyNavigableMap);
+    }
+
+    /**
+     * Sorted view of the events stored after the first position up to the second one, which must not be later than
+     * the last published position.
+     */
+    NavigableMap<Position, Event> publishedEvents(Position after, Position until) {
+        return between(storedEvents, after, until);
+    }
+
+    NavigableMap<Position, Event> publishedEvents(String type, Position after, Position until) {
+        return Optional.ofNullable(storedEventsByType.get(type))
+                .map(eventsOfType -> between(eventsOfType, after, until))
+                .orElseGet(Collections::emptyNavigableMap);
+    }
+
+    private static NavigableMap<Position, Event> between(NavigableMap<Position, Event> events, Position after, Position until) {
+        if (after.compareTo(until) >= 0) {
+            return Collections.emptyNavigableMap();
+        }
+        return events.subMap(after, false, until, true);
+    }
+
+    public void persist() {
+        journal.force();
+    }
+
+    /**
+     * Writes every event published so far to a snapshot, from which the next startup is restored. The journal is
+     * forced first so that it never holds less than its snapshot.
+     */
+    public void snapshot() {
+        synchronized (snapshotLock) {
+            Position until = lastPublished;
+            if (until.getSequence() < 0) {
+                return;
+            }
+            journal.force();
+            Iterable<Map.Entry<Position, Event>> events = payloads
+                    .<Iterable<Map.Entry<Position, Event>>>map(cache -> () -> publishedEvents(until).entrySet().stream()
+                            .<Map.Entry<Position, Event>>map(entry -> new SimpleImmutableEntry<>(entry.getKey(),
+                                    new Event(entry.getKey().getDate(), entry.getValue().type, cache.peek(entry.getKey().getSequence()))))
+                            .iterator())
+                    .orElseGet(() -> publishedEvents(until).entrySet());
+            Snapshot.write(directory, until, events);
+            checkpointProjections();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (publication) {
+            publication.notifyAll();
+        }
+        snapshotter.ifPresent(executor -> {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        checkpointProjections();
+        journal.close();
+    }
 
 }
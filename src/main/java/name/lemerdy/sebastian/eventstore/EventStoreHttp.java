@@ -5,76 +5,210 @@ import org.simpleframework.http.core.Container;
 import org.simpleframework.http.core.ContainerSocketProcessor;
 import org.simpleframework.transport.connect.SocketConnection;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.OutputStreamWriter;
 import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
-import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
-import static java.util.stream.Collectors.joining;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
 
-public class EventStoreHttp implements Container {
+public class EventStoreHttp implements Container, AutoCloseable {
 
     static final String BASIC = "Basic ";
+    static final String AFTER = "after";
+    static final String LIMIT = "limit";
+    static final String FROM = "from";
+    static final String TO = "to";
+    static final String COMPACT = "compact";
+    static final String EXPECTED_VERSION = "expectedVersion";
+    static final String STREAM_VERSION = "X-Stream-Version";
+    static final String NEXT_CURSOR = "X-Next-Cursor";
+    static final String LAST_EVENT_ID = "Last-Event-ID";
+    static final String EVENT_STREAM = "text/event-stream";
+    static final String JSON = "application/json";
+    static final String NDJSON = "application/x-ndjson";
+    static final String GZIP = "gzip";
+    static final String METRICS = "/metrics";
+    static final String METRICS_CONTENT_TYPE = "text/plain; version=0.0.4";
+    static final String PROJECTIONS = "/projections/";
+    static final String PROJECTIONS_SYSTEM_PROPERTY_KEY = "projections";
+
+    private static final long HEARTBEAT_MILLIS = 15_000;
 
     private final EventStore eventStore;
+    private final ServerOptions options;
     private final Serializer serializer;
+    private final BatchParser batchParser;
+    private final Authorizer authorizer;
+    private final Semaphore inFlight;
+    private final ExecutorService executor;
+    private final Metrics metrics;
+    private final ConcurrentMap<Integer, LongAdder> requests = new ConcurrentHashMap<>();
+    private final LongAdder authorizationFailures;
+
+    private Optional<SocketConnection> socketConnection = Optional.empty();
 
     public EventStoreHttp(EventStore eventStore) {
+        this(eventStore, ServerOptions.defaults());
+    }
+
+    public EventStoreHttp(EventStore eventStore, ServerOptions options) {
+        this(eventStore, options, Authorizer.fromSystemProperties());
+    }
+
+    EventStoreHttp(EventStore eventStore, ServerOptions options, Authorizer authorizer) {
         this.eventStore = eventStore;
+        this.options = options;
+        this.authorizer = authorizer;
         this.serializer = new Serializer();
+        this.batchParser = new BatchParser();
+        this.inFlight = new Semaphore(options.getMaxConcurrentRequests());
+        this.metrics = eventStore.metrics();
+        this.authorizationFailures = metrics.counter("eventstore_http_authorization_failures_total", "Requests without valid credentials.");
+        metrics.gauge("eventstore_http_requests_in_flight", "Requests being served, subscriptions included.",
+                () -> options.getMaxConcurrentRequests() - inFlight.availablePermits());
+        this.executor = options.getExecution() == ServerOptions.Execution.VIRTUAL_THREADS
+                ? virtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "eventstore-subscription");
+                    thread.setDaemon(true);
+                    return thread;
+                });
     }
 
+    /**
+     * Hands the request to the thread that serves it: the calling worker for a short request, a thread of its own
+     * for a subscription or for any request on virtual threads. The response is closed once served, even when that
+     * happens after this method returns.
+     */
     @Override
     public void handle(Request req, Response resp) {
-        try {
-            if (!checkAuthorization(req)) {
-                unauthorized(resp);
-                return;
-            }
-            if (!req.getPath().getPath().startsWith("/events")) {
-                notFound(resp);
-                return;
+        if (!inFlight.tryAcquire()) {
+            unavailable(resp);
+            close(resp);
+            return;
+        }
+        Runnable serve = () -> {
+            try {
+                serve(req, resp);
+            } catch (RuntimeException e) {
+                resp.setStatus(Status.INTERNAL_SERVER_ERROR);
+                throw e;
+            } finally {
+                close(resp);
+                inFlight.release();
             }
+        };
+        if (options.getExecution() == ServerOptions.Execution.WORKERS && !isSubscription(req)) {
+            serve.run();
+            return;
+        }
+        try {
+            executor.execute(serve);
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            unavailable(resp);
+            close(resp);
+        }
+    }
 
-            String[] segments = req.getPath().getSegments();
+    /**
+     * Counts the response by status once it is sent, the counter of each status being looked up once.
+     */
+    private void close(Response resp) {
+        try {
+            resp.close();
+        } catch (IOException ignored) {
+        }
+        requests.computeIfAbsent(resp.getCode(), code -> metrics.counter(
+                "eventstore_http_requests_total{code=\"" + code + "\"}", "Responses sent, by status code.")).increment();
+    }
 
-            if (segments.length == 2 && Method.POST.equals(req.getMethod())) {
-                store(req, resp, segments[1]);
-                return;
-            }
+    private void serve(Request req, Response resp) {
+        if (!checkAuthorization(req)) {
+            authorizationFailures.increment();
+            unauthorized(resp);
+            return;
+        }
+        if (METRICS.equals(req.getPath().getPath())) {
+            metrics(resp);
+            return;
+        }
+        if (req.getPath().getPath().startsWith(PROJECTIONS)) {
+            projection(req, resp);
+            return;
+        }
+        if (!req.getPath().getPath().startsWith("/events")) {
+            notFound(resp);
+            return;
+        }
 
-            events(req, resp);
-        } finally {
-            try {
-                resp.close();
-            } catch (IOException ignored) {
-            }
+        String[] segments = req.getPath().getSegments();
+
+        if (segments.length == 2 && Method.POST.equals(req.getMethod())) {
+            store(req, resp, segments[1]);
+            return;
+        }
+
+        if (segments.length == 1 && Method.POST.equals(req.getMethod())) {
+            storeBatch(req, resp);
+            return;
         }
+
+        events(req, resp);
+    }
+
+    private static boolean isSubscription(Request req) {
+        return Optional.ofNullable(req.getValue(Protocol.ACCEPT))
+                .filter(accept -> accept.contains(EVENT_STREAM))
+                .isPresent();
     }
 
     private boolean checkAuthorization(Request req) {
         return Optional.ofNullable(req.getValue(Protocol.AUTHORIZATION))
                 .filter(authorization -> authorization.startsWith(BASIC))
                 .map(authorization -> authorization.substring(BASIC.length()))
-                .map(String::getBytes)
-                .map(authorization -> Base64.getMimeDecoder().decode(authorization))
-                .map(String::new)
-                .map(authorization -> authorization.split(":"))
-                .filter(authorization -> authorization.length == 2)
-                .map(Authorizer::new)
-                .map(Authorizer::isAuthorized)
-                .orElse(false);
+                .flatMap(authorizer::authorize)
+                .isPresent();
     }
 
     private void notFound(Response resp) {
         resp.setStatus(Status.NOT_FOUND);
     }
 
+    private void badRequest(Response resp) {
+        resp.setStatus(Status.BAD_REQUEST);
+    }
+
+    private void unavailable(Response resp) {
+        resp.setStatus(Status.SERVICE_UNAVAILABLE);
+    }
+
     private void unauthorized(Response resp) {
         resp.setStatus(Status.UNAUTHORIZED);
         resp.setValue(Protocol.WWW_AUTHENTICATE, "Basic realm=\"eventstore\"");
@@ -88,32 +222,309 @@ public class EventStoreHttp implements Container {
         } catch (ArrayIndexOutOfBoundsException e) {
             maybeFilter = Optional.empty();
         }
+        Optional<Instant> startingFrom = maybeFilter.flatMap(EventStoreHttp::parseInstant);
+        Optional<String> type = maybeFilter.filter(filter -> !startingFrom.isPresent());
 
-        resp.setContentType("application/json");
+        boolean subscription = isSubscription(req);
+
+        Position after;
+        Position end;
+        Optional<Integer> limit;
+        try {
+            after = Optional.ofNullable(req.getParameter(AFTER))
+                    .map(Optional::of)
+                    .orElseGet(() -> Optional.ofNullable(req.getValue(LAST_EVENT_ID)).filter(cursor -> subscription))
+                    .map(Position::fromCursor)
+                    .orElse(Position.ORIGIN);
+            Optional<Instant> from = Optional.ofNullable(req.getParameter(FROM)).map(Instant::parse);
+            after = Position.latest(after, startingFrom.map(Position::before).orElse(Position.ORIGIN));
+            after = Position.latest(after, from.map(Position::before).orElse(Position.ORIGIN));
+            end = Optional.ofNullable(req.getParameter(TO)).map(Instant::parse).map(Position::before).orElse(Position.END);
+            limit = Optional.ofNullable(req.getParameter(LIMIT)).map(Integer::valueOf);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            badRequest(resp);
+            return;
+        }
+        if (limit.filter(pageSize -> pageSize <= 0).isPresent()) {
+            badRequest(resp);
+            return;
+        }
+
+        if (subscription) {
+            subscribe(type, after, end, resp);
+            return;
+        }
+
+        long start = System.nanoTime();
+        Position until = Position.earliest(eventStore.lastPosition(), end);
+        String etag = etag(type.map(eventsType -> eventStore.lastPosition(eventsType, until)).orElse(until));
+        resp.setValue(Protocol.ETAG, etag);
+        resp.setValue(Protocol.VARY, "Accept, Accept-Encoding");
+        if (matches(req.getValue(Protocol.IF_NONE_MATCH), etag)) {
+            resp.setStatus(Status.NOT_MODIFIED);
+            return;
+        }
+        Stream<Map.Entry<Position, Event>> entries = query(type, after, until);
+
+        Stream<Event> events;
+        if (limit.isPresent()) {
+            List<Map.Entry<Position, Event>> page = entries.limit(limit.get()).collect(toList());
+            Position next = page.size() == limit.get() ? page.get(page.size() - 1).getKey() : until;
+            resp.setValue(NEXT_CURSOR, next.toCursor());
+            events = page.stream().map(Map.Entry::getValue);
+        } else {
+            resp.setValue(NEXT_CURSOR, until.toCursor());
+            events = entries.map(Map.Entry::getValue);
+        }
+
+        Format format = Format.negotiate(req.getValue(Protocol.ACCEPT), "true".equals(req.getParameter(COMPACT)));
+        resp.setContentType(format.contentType);
 
-        PrintStream printStream;
         try {
-            printStream = resp.getPrintStream();
+            if (acceptsGzip(req)) {
+                resp.setValue(Protocol.CONTENT_ENCODING, GZIP);
+                GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(resp.getByteChannel()), options.getResponseBufferSize());
+                writeEvents(events, format, Channels.newChannel(gzip));
+                gzip.finish();
+            } else {
+                writeEvents(events, format, resp.getByteChannel());
+            }
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
+        boolean ranged = startingFrom.isPresent() || req.getParameter(FROM) != null || req.getParameter(TO) != null;
+        eventStore.queryLatency(type.isPresent() ? EventStore.TYPE_QUERY : ranged ? EventStore.INSTANT_QUERY : EventStore.ALL_QUERY)
+                .recordSince(start);
+    }
 
-        printStream.print(maybeFilter.map(startingFromOrType -> {
-            try {
-                return eventStore.events(Instant.parse(startingFromOrType));
-            } catch (DateTimeParseException e) {
-                return eventStore.events(startingFromOrType);
+    /**
+     * Events are only ever appended, after the last position, so the events a query returns up to a position stay the
+     * same until an event it would return is stored: the position of the last of them identifies the response, given
+     * its URL. The tag is weak since the same events are also written in other formats and encodings.
+     */
+    private static String etag(Position lastRelevant) {
+        return "W/\"" + lastRelevant.toCursor() + "\"";
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaqueTag = etag.substring(2);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(opaqueTag)) {
+                return true;
             }
-        })
-                .orElseGet(eventStore::events)
-                .stream()
-                .map(event -> "" +
-                        "  {\n" +
-                        "    \"date\": \"" + event.date + "\",\n" +
-                        "    \"type\": \"" + event.type + "\",\n" +
-                        "    \"data\": \"" + serializer.apply(event.data) + "\"\n" +
-                        "  }")
-                .collect(joining(",\n", "[\n", "\n]")));
+        }
+        return false;
+    }
+
+    private static Optional<Instant> parseInstant(String startingFromOrType) {
+        try {
+            return Optional.of(Instant.parse(startingFromOrType));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Seeks straight to the first event after the given position through the sorted index and stops at the given
+     * one, so that a range or a page only walks the events it returns.
+     */
+    private Stream<Map.Entry<Position, Event>> query(Optional<String> type, Position after, Position until) {
+        return type.map(eventsType -> eventStore.publishedEvents(eventsType, after, until))
+                .orElseGet(() -> eventStore.publishedEvents(after, until))
+                .entrySet().stream()
+                .map(eventStore::resolve);
+    }
+
+    /**
+     * Pushes events as server-sent events until the client goes away or the store is closed. The subscription only
+     * keeps a cursor: each round reads what was published after it, so a slow client is held back by its socket and
+     * catches up from the store instead of piling events up in memory. It ends once the end of the requested range
+     * is published. Events go through the output stream of the response, the only one whose flush reaches the
+     * socket before the response is closed.
+     */
+    private void subscribe(Optional<String> type, Position after, Position end, Response resp) {
+        resp.setContentType(EVENT_STREAM);
+        resp.setValue(Protocol.CACHE_CONTROL, "no-cache");
+        try {
+            // the response keeps what is written until its buffer fills up: flushing its output stream sends the
+            // events right away, which its byte channel cannot do
+            Writer out = new BufferedWriter(new OutputStreamWriter(resp.getOutputStream(), UTF_8), options.getResponseBufferSize());
+            Position cursor = after;
+            while (!eventStore.isClosed() && cursor.compareTo(end) < 0) {
+                Position until = Position.earliest(eventStore.lastPosition(), end);
+                Iterator<Map.Entry<Position, Event>> entries = query(type, cursor, until).iterator();
+                while (entries.hasNext()) {
+                    Map.Entry<Position, Event> entry = entries.next();
+                    Event event = entry.getValue();
+                    out.write("id: ");
+                    out.write(entry.getKey().toCursor());
+                    out.write("\ndata: {\"date\": \"");
+                    out.write(event.date.toString());
+                    out.write("\", \"type\": \"");
+                    serializer.write(event.type, out);
+                    out.write("\", \"data\": \"");
+                    serializer.write(event.data, out);
+                    out.write("\"}\n\n");
+                }
+                if (until.compareTo(cursor) > 0) {
+                    cursor = until;
+                } else {
+                    out.write(":\n\n");
+                }
+                out.flush();
+                eventStore.awaitPublishedAfter(cursor, HEARTBEAT_MILLIS);
+            }
+        } catch (IOException e) {
+            // the client closed the connection
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Encodes events one by one into a fixed size buffer that is written to the channel each time it fills up: the
+     * response is sent chunked and its memory does not depend on how many events are returned.
+     */
+    private void writeEvents(Stream<Event> events, Format format, WritableByteChannel channel) throws IOException {
+        Writer out = Channels.newWriter(channel, UTF_8.newEncoder(), options.getResponseBufferSize());
+        out.write(format.start);
+        Iterator<Event> iterator = events.iterator();
+        while (iterator.hasNext()) {
+            Event event = iterator.next();
+            out.write(format.beforeDate);
+            out.write(event.date.toString());
+            out.write(format.beforeType);
+            serializer.write(event.type, out);
+            out.write(format.beforeData);
+            serializer.write(event.data, out);
+            out.write(format.afterData);
+            if (iterator.hasNext()) {
+                out.write(format.separator);
+            }
+        }
+        out.write(format.end);
+        out.flush();
+    }
+
+    /**
+     * Tells whether the client accepts a gzip encoded response, that is whether it lists gzip in its
+     * {@code Accept-Encoding} header without a zero quality.
+     */
+    private static boolean acceptsGzip(Request req) {
+        return quality(req.getValue(Protocol.ACCEPT_ENCODING), GZIP) > 0;
+    }
+
+    /**
+     * Quality given by an {@code Accept} or {@code Accept-Encoding} header to a value: the one of the element naming
+     * it or, when none does, of the first of the given ranges found, such as {@code application/*} then
+     * {@code *}{@code /*}. Zero when none is found, one when found without a {@code q} parameter.
+     */
+    private static double quality(String header, String value, String... ranges) {
+        if (header == null) {
+            return 0;
+        }
+        Map<String, Double> qualities = new HashMap<>();
+        for (String element : header.split(",")) {
+            String[] parameters = element.split(";");
+            double quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String[] parameter = parameters[i].split("=", 2);
+                if (parameter.length == 2 && parameter[0].trim().equalsIgnoreCase("q")) {
+                    try {
+                        quality = Double.parseDouble(parameter[1].trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            qualities.putIfAbsent(parameters[0].trim().toLowerCase(Locale.ROOT), quality);
+        }
+        return Stream.concat(Stream.of(value), Stream.of(ranges))
+                .map(qualities::get)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(0d);
+    }
+
+    /**
+     * How events are written: a JSON array indented for humans, written without any whitespace when the request asks
+     * for it with {@value #COMPACT}, or one compact JSON object per line when the client prefers NDJSON to JSON.
+     */
+    private enum Format {
+
+        PRETTY(JSON, "[\n", "  {\n    \"date\": \"", "\",\n    \"type\": \"", "\",\n    \"data\": \"", "\"\n  }", ",\n", "\n]"),
+        COMPACT(JSON, "[", "{\"date\":\"", "\",\"type\":\"", "\",\"data\":\"", "\"}", ",", "]"),
+        LINES(NDJSON, "", "{\"date\":\"", "\",\"type\":\"", "\",\"data\":\"", "\"}\n", "", "");
+
+        private final String contentType;
+        private final String start;
+        private final String beforeDate;
+        private final String beforeType;
+        private final String beforeData;
+        private final String afterData;
+        private final String separator;
+        private final String end;
+
+        Format(String contentType, String start, String beforeDate, String beforeType, String beforeData, String afterData, String separator, String end) {
+            this.contentType = contentType;
+            this.start = start;
+            this.beforeDate = beforeDate;
+            this.beforeType = beforeType;
+            this.beforeData = beforeData;
+            this.afterData = afterData;
+            this.separator = separator;
+            this.end = end;
+        }
+
+        /**
+         * JSON is given when both are as acceptable, as well as when none is: it was the only format at first.
+         */
+        static Format negotiate(String accept, boolean compact) {
+            double lines = Math.max(quality(accept, NDJSON, "application/*", "*/*"), quality(accept, "application/ndjson"));
+            if (lines > quality(accept, JSON, "application/*", "*/*")) {
+                return LINES;
+            }
+            return compact ? COMPACT : PRETTY;
+        }
+
+    }
+
+    private void metrics(Response resp) {
+        resp.setContentType(METRICS_CONTENT_TYPE);
+        try {
+            Writer out = Channels.newWriter(resp.getByteChannel(), UTF_8.newEncoder(), options.getResponseBufferSize());
+            metrics.write(out);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Serves the state of a projection from memory, with the cursor of the last event it folded: reading the events
+     * after this cursor gives what happened since.
+     */
+    private void projection(Request req, Response resp) {
+        String[] segments = req.getPath().getSegments();
+        Optional<Projected<?>> projection = segments.length == 2 ? eventStore.projection(segments[1]) : Optional.empty();
+        if (!projection.isPresent()) {
+            notFound(resp);
+            return;
+        }
+        Map.Entry<Position, String> state = projection.get().encoded();
+        resp.setValue(NEXT_CURSOR, state.getKey().toCursor());
+        resp.setContentType("application/json");
+        try {
+            Writer out = Channels.newWriter(resp.getByteChannel(), UTF_8.newEncoder(), options.getResponseBufferSize());
+            out.write(state.getValue());
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     private void store(Request req, Response resp, String type) {
@@ -124,22 +535,114 @@ public class EventStoreHttp implements Container {
             throw new UncheckedIOException(e);
         }
 
-        eventStore.store(type, content);
-        eventStore.persist();
+        OptionalLong expectedVersion;
+        try {
+            expectedVersion = Optional.ofNullable(req.getParameter(EXPECTED_VERSION))
+                    .map(version -> OptionalLong.of(Long.parseLong(version)))
+                    .orElseGet(OptionalLong::empty);
+        } catch (NumberFormatException e) {
+            badRequest(resp);
+            return;
+        }
+
+        try {
+            resp.setValue(STREAM_VERSION, Long.toString(eventStore.append(type, content, expectedVersion)));
+            resp.setStatus(Status.CREATED);
+        } catch (WrongExpectedVersionException e) {
+            resp.setValue(STREAM_VERSION, Long.toString(eventStore.version(type)));
+            resp.setStatus(Status.CONFLICT);
+        }
+    }
+
+    /**
+     * Appends every event of the body, a JSON array of {@code {"type": ..., "data": ...}} objects, with a single
+     * durable write.
+     */
+    private void storeBatch(Request req, Response resp) {
+        List<NewEvent> events;
+        try {
+            events = batchParser.apply(req.getContent());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (IllegalArgumentException e) {
+            badRequest(resp);
+            return;
+        }
+
+        eventStore.store(events);
         resp.setStatus(Status.CREATED);
     }
 
-    private void start() {
+    /**
+     * Listens on the configured port, the sockets being selected by {@code selectors} threads and requests served by
+     * {@code workers} threads.
+     */
+    void start() {
         try {
-            ContainerSocketProcessor containerSocketProcessor = new ContainerSocketProcessor(new EventStoreHttp(eventStore));
-            SocketConnection socketConnection = new SocketConnection(containerSocketProcessor);
-            socketConnection.connect(new InetSocketAddress(8080));
+            ContainerSocketProcessor containerSocketProcessor = new ContainerSocketProcessor(this, options.getWorkers(), options.getSelectors());
+            SocketConnection connection = new SocketConnection(containerSocketProcessor);
+            connection.connect(new InetSocketAddress(options.getPort()));
+            socketConnection = Optional.of(connection);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
+    @Override
+    public void close() {
+        try {
+            if (socketConnection.isPresent()) {
+                socketConnection.get().close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static ExecutorService virtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("virtual threads need a Java 21 runtime", e);
+        }
+    }
+
+    /**
+     * Registers the projections given by the {@code projections} system property as comma separated
+     * {@code name=count} or {@code name=latest} definitions, each optionally followed by {@code :type} to only fold the
+     * events of that type.
+     */
+    static void projectFromSystemProperties(EventStore eventStore) {
+        Optional.ofNullable(System.getProperty(PROJECTIONS_SYSTEM_PROPERTY_KEY)).ifPresent(property -> {
+            for (String definition : property.split(",")) {
+                int separator = definition.indexOf('=');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("expected name=projection in " + PROJECTIONS_SYSTEM_PROPERTY_KEY + " system property: " + definition);
+                }
+                String name = definition.substring(0, separator).trim();
+                String[] kindAndType = definition.substring(separator + 1).trim().split(":", 2);
+                Projection<?> projection;
+                if ("count".equals(kindAndType[0])) {
+                    projection = Projection.count();
+                } else if ("latest".equals(kindAndType[0])) {
+                    projection = Projection.latest();
+                } else {
+                    throw new IllegalArgumentException("unknown projection " + kindAndType[0] + " in " + PROJECTIONS_SYSTEM_PROPERTY_KEY + " system property");
+                }
+                if (kindAndType.length == 2) {
+                    eventStore.project(name, kindAndType[1], projection);
+                } else {
+                    eventStore.project(name, projection);
+                }
+            }
+        });
+    }
+
     public static void main(String[] args) {
-        new EventStoreHttp(new EventStore(Clock.systemUTC())).start();
+        EventStore eventStore = new EventStore(Clock.systemUTC(), StoreOptions.fromSystemProperties());
+        projectFromSystemProperties(eventStore);
+        new EventStoreHttp(eventStore, ServerOptions.fromSystemProperties()).start();
     }
 }
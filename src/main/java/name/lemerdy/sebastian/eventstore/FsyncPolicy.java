@@ -0,0 +1,86 @@
+package name.lemerdy.sebastian.eventstore;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.experimental.PackagePrivate;
+
+import java.util.Optional;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Value
+@AllArgsConstructor(access = PRIVATE)
+public class FsyncPolicy {
+
+    @PackagePrivate
+    static final String FSYNC_SYSTEM_PROPERTY_KEY = "fsync";
+
+    enum Trigger {
+        EVERY_WRITE, EVERY_MILLIS, EVERY_RECORDS, GROUP_COMMIT
+    }
+
+    private static final int DEFAULT_GROUP_COMMIT_BATCH_SIZE = 512;
+
+    Trigger trigger;
+    long every;
+
+    public static FsyncPolicy everyWrite() {
+        return new FsyncPolicy(Trigger.EVERY_WRITE, 1);
+    }
+
+    public static FsyncPolicy everyMillis(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("fsync interval must be positive: " + millis);
+        }
+        return new FsyncPolicy(Trigger.EVERY_MILLIS, millis);
+    }
+
+    public static FsyncPolicy everyRecords(int records) {
+        if (records <= 0) {
+            throw new IllegalArgumentException("fsync record count must be positive: " + records);
+        }
+        return new FsyncPolicy(Trigger.EVERY_RECORDS, records);
+    }
+
+    public static FsyncPolicy groupCommit() {
+        return groupCommit(DEFAULT_GROUP_COMMIT_BATCH_SIZE);
+    }
+
+    /**
+     * Concurrent writers are queued and a single flusher thread writes and fsyncs up to {@code maxBatchSize} of them at
+     * once: every write is still durable when {@link EventStore#store(String, String)} returns.
+     */
+    public static FsyncPolicy groupCommit(int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("group commit batch size must be positive: " + maxBatchSize);
+        }
+        return new FsyncPolicy(Trigger.GROUP_COMMIT, maxBatchSize);
+    }
+
+    /**
+     * Reads the policy from the {@code fsync} system property: {@code group} (default), {@code write}, {@code <n>ms}
+     * or {@code <n>records}.
+     */
+    static FsyncPolicy fromSystemProperty() {
+        return Optional.ofNullable(System.getProperty(FSYNC_SYSTEM_PROPERTY_KEY))
+                .map(FsyncPolicy::parse)
+                .orElseGet(FsyncPolicy::groupCommit);
+    }
+
+    static FsyncPolicy parse(String policy) {
+        if ("group".equals(policy)) {
+            return groupCommit();
+        }
+        if ("write".equals(policy)) {
+            return everyWrite();
+        }
+        if (policy.endsWith("ms")) {
+            return everyMillis(Long.parseLong(policy.substring(0, policy.length() - "ms".length())));
+        }
+        if (policy.endsWith("records")) {
+            return everyRecords(Integer.parseInt(policy.substring(0, policy.length() - "records".length())));
+        }
+        throw new IllegalArgumentException("unknown fsync policy: " + policy);
+    }
+
+}
@@ -0,0 +1,113 @@
+package name.lemerdy.sebastian.eventstore;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+import static java.util.stream.Collectors.toList;
+
+class GroupCommit implements AutoCloseable {
+
+    private static final Pending STOP = new Pending(null, null, null);
+
+    private final BlockingQueue<Pending> queue;
+    private final Consumer<List<List<Event>>> writeDurably;
+    private final int maxBatchSize;
+    private final Thread flusher;
+
+    private final Object closing = new Object();
+    private boolean closed;
+
+    GroupCommit(Consumer<List<List<Event>>> writeDurably, int maxBatchSize) {
+        this.queue = new LinkedBlockingQueue<>();
+        this.writeDurably = writeDurably;
+        this.maxBatchSize = maxBatchSize;
+        this.flusher = new Thread(this::flush, "eventstore-group-commit");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues the events, unless the store is closed: the check and the enqueue happen under the same lock as the
+     * queueing of {@link #STOP}, so that no append is queued behind it, where the flusher would never take it.
+     */
+    CompletableFuture<Void> append(List<Event> events, Runnable publish) {
+        Pending pending = new Pending(events, publish, new CompletableFuture<>());
+        synchronized (closing) {
+            if (closed) {
+                throw new IllegalStateException("event store is closed");
+            }
+            queue.add(pending);
+        }
+        return pending.durable;
+    }
+
+    private void flush() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, maxBatchSize - 1);
+            stopping = batch.removeIf(pending -> pending == STOP);
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Once the batch is durable, each of its appends is published on its own: a failure to publish one of them is
+     * only reported to its writer, the others are still published and their writers told they are stored.
+     */
+    private void write(List<Pending> batch) {
+        try {
+            writeDurably.accept(batch.stream().map(pending -> pending.events).collect(toList()));
+        } catch (RuntimeException e) {
+            batch.forEach(pending -> pending.durable.completeExceptionally(e));
+            return;
+        }
+        for (Pending pending : batch) {
+            try {
+                pending.publish.run();
+                pending.durable.complete(null);
+            } catch (RuntimeException e) {
+                pending.durable.completeExceptionally(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (closing) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(STOP);
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queue.forEach(pending -> pending.durable.completeExceptionally(new IllegalStateException("event store is closed")));
+    }
+
+    @Value
+    private static class Pending {
+        List<Event> events;
+        Runnable publish;
+        CompletableFuture<Void> durable;
+    }
+
+}
@@ -0,0 +1,334 @@
+package name.lemerdy.sebastian.eventstore;
+
+import lombok.Value;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toList;
+
+class Journal implements AutoCloseable {
+
+    private static final int DECODING_WINDOW = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final Path directory;
+    private final long segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final boolean compression;
+    private final List<Segment> segments;
+    private final Optional<ScheduledExecutorService> scheduler;
+    private final Optional<GroupCommit> groupCommit;
+    private final Metrics.Histogram fsyncLatency;
+    private final LongAdder storedEvents;
+    private final LongAdder storedBytes;
+
+    private final Object committing = new Object();
+    private final Queue<Uncommitted> uncommitted = new ArrayDeque<>();
+    private long unsyncedRecords;
+    private volatile boolean dirty;
+    private volatile Optional<RuntimeException> failure = Optional.empty();
+
+    Journal(StoreOptions options) {
+        this(options, new Metrics());
+    }
+
+    Journal(StoreOptions options, Metrics metrics) {
+        if (options.getSegmentSize() <= Segment.HEADER_SIZE || options.getSegmentSize() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segment size out of range: " + options.getSegmentSize());
+        }
+        this.directory = options.getPath();
+        this.segmentSize = options.getSegmentSize();
+        this.fsyncPolicy = options.getFsyncPolicy();
+        this.compression = options.isCompression();
+        this.segments = new CopyOnWriteArrayList<>();
+        this.fsyncLatency = metrics.histogram("eventstore_fsync_seconds", "Time spent forcing the journal to disk.");
+        this.storedEvents = metrics.counter("eventstore_stored_events_total", "Events written to the journal.");
+        this.storedBytes = metrics.counter("eventstore_stored_bytes_total", "Bytes written to the journal, framing included.");
+        this.scheduler = Optional.of(fsyncPolicy)
+                .filter(policy -> policy.getTrigger() == FsyncPolicy.Trigger.EVERY_MILLIS)
+                .map(policy -> {
+                    ScheduledExecutorService executor = newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "eventstore-fsync");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor.scheduleWithFixedDelay(this::forceIfDirty, policy.getEvery(), policy.getEvery(), MILLISECONDS);
+                    return executor;
+                });
+        this.groupCommit = Optional.of(fsyncPolicy)
+                .filter(policy -> policy.getTrigger() == FsyncPolicy.Trigger.GROUP_COMMIT)
+                .map(policy -> new GroupCommit(this::writeDurably, (int) policy.getEvery()));
+    }
+
+    /**
+     * Replays the records from {@code fromRecord} on, and returns the number of records of the journal. Sealed
+     * segments before this record are skipped without being read. Segments are scanned one after the other while the
+     * chunks found so far are decoded on the fork/join pool, then events are given in order. At most
+     * {@link #DECODING_WINDOW} chunks are decoded ahead of the consumer, so that the events of the whole journal are
+     * never held at once. A last segment whose creation was torn by a crash holds no record: it is deleted, and
+     * created again on the next roll.
+     */
+    synchronized long replay(long fromRecord, Consumer<Event> consumer) {
+        try {
+            Migration.recover(directory);
+            if (Migration.isNeeded(directory)) {
+                Migration.migrate(directory, segmentSize);
+            }
+            Files.createDirectories(directory);
+            List<Path> paths;
+            try (Stream<Path> files = Files.list(directory)) {
+                paths = files.filter(Segment::isSegment).sorted().collect(toList());
+            }
+            if (!paths.isEmpty() && Segment.isTornAtCreation(paths.get(paths.size() - 1))) {
+                Files.delete(paths.get(paths.size() - 1));
+                forceDirectory(directory);
+                paths = paths.subList(0, paths.size() - 1);
+            }
+            paths.stream().map(path -> Segment.open(path, compression)).forEach(segments::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Deque<ForkJoinTask<List<Event>>> decoding = new ArrayDeque<>();
+        for (Segment segment : segments) {
+            if (segment.isSealed() && segment.getFirstRecord() + segment.getRecordCount() <= fromRecord) {
+                continue;
+            }
+            for (Segment.Chunk chunk : segment.scan(Math.max(0, fromRecord - segment.getFirstRecord()))) {
+                if (decoding.size() == DECODING_WINDOW) {
+                    decoding.remove().join().forEach(consumer);
+                }
+                decoding.add(ForkJoinPool.commonPool().submit(chunk::decode));
+            }
+        }
+        while (!decoding.isEmpty()) {
+            decoding.remove().join().forEach(consumer);
+        }
+        if (segments.isEmpty() || active().isSealed()) {
+            roll();
+        }
+        return active().getFirstRecord() + active().getRecordCount();
+    }
+
+    /**
+     * Reads back the payload of a published record without taking the journal lock, so that reads never wait for a
+     * write or an fsync.
+     */
+    String data(long record) {
+        Segment[] current = segments.toArray(new Segment[0]);
+        int low = 0;
+        int high = current.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (current[middle].getFirstRecord() <= record) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (current.length == 0 || record < current[low].getFirstRecord()) {
+            throw new IllegalArgumentException("no record " + record + " in " + directory);
+        }
+        return current[low].data(record - current[low].getFirstRecord());
+    }
+
+    /**
+     * Appends the events as a whole: they are written together, forced together and replayed all or none of them.
+     * Without group commit, it only throws when the events were not written: they are then forced and published by
+     * the next {@link #commit()}, and a failure to force or publish them fails the returned future instead.
+     */
+    CompletableFuture<Void> append(List<Event> events, Runnable publish) {
+        if (groupCommit.isPresent()) {
+            return groupCommit.get().append(events, publish);
+        }
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        synchronized (this) {
+            checkNotFailed();
+            write(singletonList(events));
+            unsyncedRecords += events.size();
+            uncommitted.add(new Uncommitted(publish, durable));
+        }
+        return durable;
+    }
+
+    /**
+     * Forces the appends written so far when the fsync policy asks for it, then publishes them in the order they were
+     * written. Writers call it once they no longer hold the lock that orders their appends, so that the next ones are
+     * written during the fsync, which then covers them too: the writer that commits first does it for all of them.
+     */
+    void commit() {
+        if (groupCommit.isPresent()) {
+            return;
+        }
+        synchronized (committing) {
+            List<Uncommitted> written;
+            boolean forced;
+            synchronized (this) {
+                written = new ArrayList<>(uncommitted);
+                uncommitted.clear();
+                forced = fsyncPolicy.getTrigger() != FsyncPolicy.Trigger.EVERY_MILLIS && unsyncedRecords >= fsyncPolicy.getEvery();
+            }
+            if (forced) {
+                try {
+                    checkNotFailed();
+                    force();
+                } catch (RuntimeException e) {
+                    written.forEach(append -> append.durable.completeExceptionally(e));
+                    return;
+                }
+            }
+            for (Uncommitted append : written) {
+                try {
+                    append.publish.run();
+                    append.durable.complete(null);
+                } catch (RuntimeException e) {
+                    append.durable.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private void writeDurably(List<List<Event>> batches) {
+        synchronized (committing) {
+            synchronized (this) {
+                checkNotFailed();
+                write(batches);
+            }
+            force();
+        }
+    }
+
+    /**
+     * Whether a write or a force failed. Records are numbered by their rank in the journal and a failed write may
+     * leave part of a record behind it, so the journal then rejects any other write: the events appended after the
+     * failed ones would not get the records their positions were given. A restart replays what it holds.
+     */
+    boolean hasFailed() {
+        return failure.isPresent();
+    }
+
+    private void checkNotFailed() {
+        if (failure.isPresent()) {
+            throw new IllegalStateException("journal " + directory + " failed to write, restart to replay what it holds", failure.get());
+        }
+    }
+
+    private RuntimeException failed(RuntimeException cause) {
+        failure = Optional.of(cause);
+        return cause;
+    }
+
+    /**
+     * Fills the active segment and rolls to a new one when the next batch would overflow it: a segment holds at
+     * least one batch, even when this batch alone is bigger than the segment size.
+     */
+    private void write(List<List<Event>> batches) {
+        try {
+            int from = 0;
+            while (from < batches.size()) {
+                long size = active().size();
+                int appended = active().append(batches.subList(from, batches.size()), segmentSize);
+                storedBytes.add(active().size() - size);
+                if (appended == 0) {
+                    active().seal();
+                    roll();
+                }
+                for (List<Event> batch : batches.subList(from, from + appended)) {
+                    storedEvents.add(batch.size());
+                }
+                from += appended;
+            }
+        } catch (RuntimeException e) {
+            throw failed(e);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Forces the records written so far without holding the journal lock, so that appends go on being written
+     * meanwhile. The segments before the active one were forced when they were sealed.
+     */
+    void force() {
+        synchronized (committing) {
+            Segment segment;
+            synchronized (this) {
+                segment = active();
+                dirty = false;
+                unsyncedRecords = 0;
+            }
+            long start = System.nanoTime();
+            try {
+                segment.force();
+            } catch (RuntimeException e) {
+                throw failed(e);
+            }
+            fsyncLatency.recordSince(start);
+        }
+    }
+
+    private void forceIfDirty() {
+        if (dirty) {
+            force();
+        }
+    }
+
+    private Segment active() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private void roll() {
+        long nextRecord = segments.isEmpty() ? 0 : active().getFirstRecord() + active().getRecordCount();
+        segments.add(Segment.create(directory, nextRecord, compression));
+        forceDirectory(directory);
+    }
+
+    static void forceDirectory(Path directory) {
+        try (FileChannel directoryChannel = FileChannel.open(directory, READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        groupCommit.ifPresent(GroupCommit::close);
+        scheduler.ifPresent(ScheduledExecutorService::shutdown);
+        synchronized (committing) {
+            synchronized (this) {
+                if (!segments.isEmpty()) {
+                    force();
+                }
+                segments.forEach(Segment::close);
+                segments.clear();
+            }
+        }
+    }
+
+    @Value
+    private static class Uncommitted {
+        Runnable publish;
+        CompletableFuture<Void> durable;
+    }
+
+}
@@ -0,0 +1,52 @@
+package name.lemerdy.sebastian.eventstore;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps the latest event, encoded as {@code null} or as the object written by {@link EventStoreHttp} for each event.
+ */
+class LatestProjection implements Projection<Optional<Event>> {
+
+    private static final String NONE = "null";
+
+    private final Serializer serializer = new Serializer();
+    private final BatchParser parser = new BatchParser();
+
+    @Override
+    public Optional<Event> initial() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<Event> apply(Optional<Event> latest, Event event) {
+        return Optional.of(event);
+    }
+
+    @Override
+    public String encode(Optional<Event> latest) {
+        return latest
+                .map(event -> "{\"date\": \"" + event.date + "\", \"type\": \"" + serializer.apply(event.type)
+                        + "\", \"data\": \"" + serializer.apply(event.data) + "\"}")
+                .orElse(NONE);
+    }
+
+    @Override
+    public Optional<Event> decode(String encoded) {
+        if (NONE.equals(encoded.trim())) {
+            return Optional.empty();
+        }
+        Map<String, String> members = parser.object(encoded);
+        if (!members.containsKey("date") || !members.containsKey("type") || !members.containsKey("data")) {
+            throw new IllegalArgumentException("not an event: " + encoded);
+        }
+        try {
+            return Optional.of(new Event(Instant.parse(members.get("date")), members.get("type"), members.get("data")));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("not an event: " + encoded, e);
+        }
+    }
+
+}
@@ -0,0 +1,260 @@
+package name.lemerdy.sebastian.eventstore;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters, gauges and latency histograms of the store, written in the Prometheus text format. Recording only adds to
+ * a {@link LongAdder}, so that threads recording at the same time do not contend on a single cell. Metrics are named
+ * with their labels, {@code family{label="value"}}, and written grouped by family in the order of their names.
+ */
+class Metrics {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final ConcurrentNavigableMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    LongAdder counter(String name, String help) {
+        return ((Counter) metrics.computeIfAbsent(name, counter -> new Counter(help))).value;
+    }
+
+    /**
+     * Registers a counter maintained elsewhere, read when the metrics are written.
+     */
+    void counter(String name, String help, LongSupplier value) {
+        metrics.put(name, new Gauge("counter", help, value));
+    }
+
+    void gauge(String name, String help, LongSupplier value) {
+        metrics.put(name, new Gauge("gauge", help, value));
+    }
+
+    /**
+     * Records in seconds the gauge given in nanoseconds, such as a duration measured once.
+     */
+    void durationGauge(String name, String help, LongSupplier nanos) {
+        metrics.put(name, new DurationGauge(help, nanos));
+    }
+
+    Histogram histogram(String name, String help) {
+        return (Histogram) metrics.computeIfAbsent(name, histogram -> new Histogram(help));
+    }
+
+    void write(Writer out) throws IOException {
+        String family = null;
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            String name = entry.getKey();
+            int labels = name.indexOf('{');
+            String familyOfName = labels < 0 ? name : name.substring(0, labels);
+            Metric metric = entry.getValue();
+            if (!familyOfName.equals(family)) {
+                family = familyOfName;
+                out.write("# HELP " + family + " " + metric.help + "\n");
+                out.write("# TYPE " + family + " " + metric.type() + "\n");
+            }
+            metric.write(family, labels < 0 ? "" : name.substring(labels + 1, name.length() - 1), out);
+        }
+    }
+
+    private static String labelled(String family, String labels, String extraLabel) {
+        if (labels.isEmpty() && extraLabel.isEmpty()) {
+            return family;
+        }
+        return family + "{" + labels + (labels.isEmpty() || extraLabel.isEmpty() ? "" : ",") + extraLabel + "}";
+    }
+
+    private abstract static class Metric {
+
+        final String help;
+
+        Metric(String help) {
+            this.help = help;
+        }
+
+        abstract String type();
+
+        abstract void write(String family, String labels, Writer out) throws IOException;
+
+    }
+
+    private static class Counter extends Metric {
+
+        final LongAdder value = new LongAdder();
+
+        Counter(String help) {
+            super(help);
+        }
+
+        @Override
+        String type() {
+            return "counter";
+        }
+
+        @Override
+        void write(String family, String labels, Writer out) throws IOException {
+            out.write(labelled(family, labels, "") + " " + value.sum() + "\n");
+        }
+
+    }
+
+    private static class Gauge extends Metric {
+
+        final String type;
+        final LongSupplier value;
+
+        Gauge(String type, String help, LongSupplier value) {
+            super(help);
+            this.type = type;
+            this.value = value;
+        }
+
+        @Override
+        String type() {
+            return type;
+        }
+
+        @Override
+        void write(String family, String labels, Writer out) throws IOException {
+            out.write(labelled(family, labels, "") + " " + value.getAsLong() + "\n");
+        }
+
+    }
+
+    private static class DurationGauge extends Gauge {
+
+        DurationGauge(String help, LongSupplier nanos) {
+            super("gauge", help, nanos);
+        }
+
+        @Override
+        void write(String family, String labels, Writer out) throws IOException {
+            out.write(labelled(family, labels, "") + " " + value.getAsLong() / NANOS_PER_SECOND + "\n");
+        }
+
+    }
+
+    /**
+     * Durations in nanoseconds counted in buckets of logarithmic size, as HDR histograms do: each power of two is
+     * split in {@value #SUB_BUCKETS} buckets, so that a quantile is known within 12.5% whatever its magnitude, in a
+     * fixed amount of memory. It is written as a summary of its quantiles, in seconds.
+     */
+    static class Histogram extends Metric {
+
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final LongAdder[] counts = new LongAdder[BUCKETS];
+        private final LongAdder sum = new LongAdder();
+
+        Histogram(String help) {
+            super(help);
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            counts[bucket(value)].increment();
+            sum.add(value);
+        }
+
+        /**
+         * Records the time elapsed since the given {@link System#nanoTime()}.
+         */
+        void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        long count() {
+            return count(snapshot());
+        }
+
+        /**
+         * Upper bound, in nanoseconds, of the bucket holding the given quantile, or zero when nothing was recorded.
+         */
+        long quantile(double quantile) {
+            long[] snapshot = snapshot();
+            return quantile(snapshot, count(snapshot), quantile);
+        }
+
+        @Override
+        String type() {
+            return "summary";
+        }
+
+        @Override
+        void write(String family, String labels, Writer out) throws IOException {
+            long[] snapshot = snapshot();
+            long count = count(snapshot);
+            for (double quantile : QUANTILES) {
+                out.write(labelled(family, labels, "quantile=\"" + quantile + "\"") + " "
+                        + quantile(snapshot, count, quantile) / NANOS_PER_SECOND + "\n");
+            }
+            out.write(labelled(family + "_sum", labels, "") + " " + sum.sum() / NANOS_PER_SECOND + "\n");
+            out.write(labelled(family + "_count", labels, "") + " " + count + "\n");
+        }
+
+        private long[] snapshot() {
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts[i].sum();
+            }
+            return snapshot;
+        }
+
+        private static long count(long[] snapshot) {
+            long count = 0;
+            for (long bucketCount : snapshot) {
+                count += bucketCount;
+            }
+            return count;
+        }
+
+        private static long quantile(long[] snapshot, long count, double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(BUCKETS - 1);
+        }
+
+        /**
+         * Values below {@value #SUB_BUCKETS} have a bucket each, then the bucket is given by the position of the
+         * highest bit and by the {@value #SUB_BUCKET_BITS} bits that follow it.
+         */
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+            int shift = highestBit - SUB_BUCKET_BITS;
+            return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+            return lowerBound + (1L << shift) - 1;
+        }
+
+    }
+
+}
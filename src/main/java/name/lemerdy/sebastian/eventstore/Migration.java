@@ -0,0 +1,151 @@
+package name.lemerdy.sebastian.eventstore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Collections.singletonList;
+
+/**
+ * Rewrites the journal of the first versions, a single text file, as binary segments. The store runs it on startup
+ * when needed, it can also be run once by hand:
+ * {@code java -cp eventstore.jar name.lemerdy.sebastian.eventstore.Migration [journal path]}.
+ * <p>
+ * Segments are written next to the journal, then renamed {@code .migrated} once complete. The text journal is moved
+ * to {@code .previous} and the segments take its place, two renames a crash may split: {@link #recover} finishes
+ * them on the next startup, before anything looks for the journal.
+ */
+public class Migration {
+
+    private static final Deserializer deserializer = new Deserializer();
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    static boolean isNeeded(Path journal) {
+        return Files.isRegularFile(journal);
+    }
+
+    /**
+     * Completes a migration interrupted by a crash. Without a journal, complete segments take its place, else the
+     * text journal is put back to be migrated again. Once the segments are in place, the text journal is deleted.
+     */
+    static void recover(Path journal) {
+        Path migrated = Paths.get(journal + ".migrated");
+        Path previous = Paths.get(journal + ".previous");
+        try {
+            if (!Files.exists(journal)) {
+                if (Files.isDirectory(migrated)) {
+                    Files.move(migrated, journal, ATOMIC_MOVE);
+                } else if (Files.exists(previous)) {
+                    Files.move(previous, journal, ATOMIC_MOVE);
+                } else {
+                    return;
+                }
+                Journal.forceDirectory(parent(journal));
+            }
+            if (Files.isDirectory(journal)) {
+                deleteRecursively(previous);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void migrate(Path journal, long segmentSize) {
+        Path migrating = Paths.get(journal + ".migrating");
+        Path migrated = Paths.get(journal + ".migrated");
+        Path previous = Paths.get(journal + ".previous");
+        try {
+            deleteRecursively(migrating);
+            deleteRecursively(migrated);
+            Files.createDirectories(migrating);
+            StoreOptions options = StoreOptions.defaults()
+                    .withPath(migrating)
+                    .withSegmentSize(segmentSize)
+                    .withFsyncPolicy(FsyncPolicy.everyRecords(Integer.MAX_VALUE));
+            try (Journal segments = new Journal(options)) {
+                segments.replay(0, event -> {
+                });
+                readLines(journal, event -> {
+                    segments.append(singletonList(event), () -> {
+                    });
+                    segments.commit();
+                });
+            }
+            Files.move(migrating, migrated, ATOMIC_MOVE);
+            Journal.forceDirectory(parent(journal));
+            Files.move(journal, previous, ATOMIC_MOVE);
+            Files.move(migrated, journal, ATOMIC_MOVE);
+            Journal.forceDirectory(parent(journal));
+            deleteRecursively(previous);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path parent(Path journal) {
+        return Optional.ofNullable(journal.toAbsolutePath().getParent()).orElse(journal.toAbsolutePath());
+    }
+
+    /**
+     * Only complete lines are read: a crash in the middle of an append leaves a last line without its separator.
+     */
+    private static void readLines(Path file, Consumer<Event> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            ByteBuffer lastByte = ByteBuffer.allocate(1);
+            boolean torn = channel.size() > 0 && channel.read(lastByte, channel.size() - 1) == 1 && lastByte.get(0) != '\n';
+            BufferedReader reader = new BufferedReader(Channels.newReader(channel, UTF_8.newDecoder(), READ_BUFFER_SIZE));
+            String line = reader.readLine();
+            while (line != null) {
+                String next = reader.readLine();
+                if (next != null || !torn) {
+                    consumer.accept(decode(line));
+                }
+                line = next;
+            }
+        }
+    }
+
+    static Event decode(String line) {
+        String[] elements = line.split(",", 3);
+        return new Event(Instant.parse(elements[0]), elements[1], deserializer.apply(elements[2]));
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        Path journal = Paths.get(args.length > 0 ? args[0] : ".eventstore");
+        recover(journal);
+        if (!isNeeded(journal)) {
+            System.out.println(journal + " is already stored as binary segments");
+            return;
+        }
+        StoreOptions options = StoreOptions.fromSystemProperties();
+        migrate(journal, options.getSegmentSize());
+        System.out.println(journal + " migrated to binary segments");
+    }
+
+}
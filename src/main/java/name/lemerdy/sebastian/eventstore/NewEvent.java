@@ -0,0 +1,12 @@
+package name.lemerdy.sebastian.eventstore;
+
+import lombok.Value;
+
+/**
+ * An event to store, dated by the store once appended.
+ */
+@Value
+public class NewEvent {
+    public String type;
+    public String data;
+}
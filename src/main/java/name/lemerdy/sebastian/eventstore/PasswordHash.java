@@ -0,0 +1,74 @@
+package name.lemerdy.sebastian.eventstore;
+
+import lombok.Value;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * A salted PBKDF2 hash of a password, written {@code pbkdf2-sha256:iterations:salt:hash} with the salt and the hash
+ * in Base64.
+ */
+@Value
+class PasswordHash {
+
+    private static final String SCHEME = "pbkdf2-sha256";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int DEFAULT_ITERATIONS = 10_000;
+    private static final int SALT_SIZE = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    int iterations;
+    byte[] salt;
+    byte[] hash;
+
+    static PasswordHash of(String password) {
+        byte[] salt = new byte[SALT_SIZE];
+        RANDOM.nextBytes(salt);
+        return new PasswordHash(DEFAULT_ITERATIONS, salt, derive(password, salt, DEFAULT_ITERATIONS));
+    }
+
+    static PasswordHash parse(String encoded) {
+        String[] parts = encoded.split(":");
+        if (parts.length != 4 || !SCHEME.equals(parts[0])) {
+            throw new IllegalArgumentException("not a " + SCHEME + " password hash: " + encoded);
+        }
+        return new PasswordHash(Integer.parseInt(parts[1]), Base64.getDecoder().decode(parts[2]), Base64.getDecoder().decode(parts[3]));
+    }
+
+    /**
+     * Compares in a time that does not depend on how much of the password is right.
+     */
+    boolean matches(String password) {
+        return MessageDigest.isEqual(hash, derive(password, salt, iterations));
+    }
+
+    String encode() {
+        return String.join(":", SCHEME, Integer.toString(iterations),
+                Base64.getEncoder().encodeToString(salt), Base64.getEncoder().encodeToString(hash));
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Prints the hash of the given password, to be used in the {@code users} system property.
+     */
+    public static void main(String[] args) {
+        System.out.println(of(args[0]).encode());
+    }
+
+}
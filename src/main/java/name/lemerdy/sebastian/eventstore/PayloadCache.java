@@ -0,0 +1,149 @@
+package name.lemerdy.sebastian.eventstore;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * Payloads of the events, by record, bounded by an estimation of their size on the heap. Payloads are evicted in the
+ * order they were cached, except those read since they were last considered, which are given a second chance: the
+ * events just stored are the last ones to be considered, so they stay in memory while older ones are read back from
+ * the journal on a miss.
+ * <p>
+ * A hit only marks the payload as read, without taking any lock, so that concurrent readers never wait for each
+ * other. Caching a payload, on a write or a miss, takes the lock of the eviction queue.
+ */
+class PayloadCache {
+
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long maxBytes;
+    private final LongFunction<String> loader;
+    private final ConcurrentMap<Long, Cached> payloads;
+    private final Queue<Long> clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private long bytes;
+
+    PayloadCache(long maxBytes, LongFunction<String> loader) {
+        this.maxBytes = maxBytes;
+        this.loader = loader;
+        this.payloads = new ConcurrentHashMap<>();
+        this.clock = new ArrayDeque<>();
+    }
+
+    void put(long record, String payload) {
+        synchronized (clock) {
+            Cached previous = payloads.put(record, new Cached(payload));
+            if (previous != null) {
+                bytes -= sizeOf(previous.payload);
+            } else {
+                clock.add(record);
+            }
+            bytes += sizeOf(payload);
+            evict();
+        }
+    }
+
+    /**
+     * Gives the payload of the record, read from the journal without holding the cache when it is not in it.
+     */
+    String get(long record) {
+        Cached cached = payloads.get(record);
+        if (cached != null) {
+            cached.read();
+            hits.increment();
+            return cached.payload;
+        }
+        misses.increment();
+        String payload = loader.apply(record);
+        put(record, payload);
+        return payload;
+    }
+
+    /**
+     * Gives the payload of the record without caching it when it is missing, for reads of the whole store that would
+     * otherwise evict every recent payload.
+     */
+    String peek(long record) {
+        Cached cached = payloads.get(record);
+        return cached != null ? cached.payload : loader.apply(record);
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    long bytes() {
+        synchronized (clock) {
+            return bytes;
+        }
+    }
+
+    /**
+     * Evicts the payloads cached first, unless they were read since they were last considered: they are then queued
+     * again as if they had just been cached. Each pass unmarks them, so that every payload is eventually evicted.
+     */
+    private void evict() {
+        while (bytes > maxBytes && !clock.isEmpty()) {
+            Long record = clock.remove();
+            Cached cached = payloads.get(record);
+            if (cached.wasRead()) {
+                clock.add(record);
+            } else {
+                payloads.remove(record);
+                bytes -= sizeOf(cached.payload);
+                evictions.increment();
+            }
+        }
+    }
+
+    private static long sizeOf(String payload) {
+        return ENTRY_OVERHEAD + 2L * payload.length();
+    }
+
+    private static class Cached {
+
+        private final String payload;
+        private volatile boolean read;
+
+        Cached(String payload) {
+            this.payload = payload;
+        }
+
+        /**
+         * Only writes the mark when it is not set yet, so that frequent hits on the same payload only read it.
+         */
+        void read() {
+            if (!read) {
+                read = true;
+            }
+        }
+
+        /**
+         * Tells whether the payload was read since the last call, and clears the mark.
+         */
+        boolean wasRead() {
+            if (!read) {
+                return false;
+            }
+            read = false;
+            return true;
+        }
+
+    }
+
+}
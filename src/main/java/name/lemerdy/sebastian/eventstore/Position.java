@@ -0,0 +1,78 @@
+package name.lemerdy.sebastian.eventstore;
+
+import lombok.Value;
+import lombok.experimental.PackagePrivate;
+
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Comparator;
+
+@Value
+class Position implements Comparable<Position> {
+
+    @PackagePrivate
+    static final Position ORIGIN = new Position(Instant.MIN, -1);
+
+    @PackagePrivate
+    static final Position END = new Position(Instant.MAX, Long.MAX_VALUE);
+
+    private static final int CURSOR_SIZE = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private static final Comparator<Position> ORDER = Comparator
+            .comparing(Position::getDate)
+            .thenComparingLong(Position::getSequence);
+
+    Instant date;
+    long sequence;
+
+    Position next(Instant now) {
+        return new Position(now.isBefore(date) ? date : now, sequence + 1);
+    }
+
+    /**
+     * Sorts before every position at the given date and after every position at an earlier one: reading after it
+     * starts at the first event of that date.
+     */
+    static Position before(Instant date) {
+        return new Position(date, Long.MIN_VALUE);
+    }
+
+    static Position earliest(Position position, Position other) {
+        return position.compareTo(other) <= 0 ? position : other;
+    }
+
+    static Position latest(Position position, Position other) {
+        return position.compareTo(other) >= 0 ? position : other;
+    }
+
+    /**
+     * Opaque and url safe form given to clients, so that they can resume a read right after this position.
+     */
+    String toCursor() {
+        ByteBuffer cursor = ByteBuffer.allocate(CURSOR_SIZE)
+                .putLong(date.getEpochSecond())
+                .putInt(date.getNano())
+                .putLong(sequence);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.array());
+    }
+
+    static Position fromCursor(String cursor) {
+        ByteBuffer decoded = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+        if (decoded.remaining() != CURSOR_SIZE) {
+            throw new IllegalArgumentException("invalid cursor: " + cursor);
+        }
+        try {
+            return new Position(Instant.ofEpochSecond(decoded.getLong(), decoded.getInt()), decoded.getLong());
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("invalid cursor: " + cursor, e);
+        }
+    }
+
+    @Override
+    public int compareTo(Position other) {
+        return ORDER.compare(this, other);
+    }
+
+}
@@ -0,0 +1,142 @@
+package name.lemerdy.sebastian.eventstore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A projection registered to a store, with the position of the last event it folded. The state and its position are
+ * swapped together so that a reader never sees a state with the position of another one.
+ * <p>
+ * Its checkpoint is a file of the store directory named after the projection, holding the cursor of that position,
+ * the type of the events it folds, empty for all of them, and the encoded state, one per line.
+ */
+class Projected<S> {
+
+    static final String EXTENSION = ".projection";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9._-]+");
+
+    private final String name;
+    private final Optional<String> type;
+    private final Projection<S> projection;
+
+    private volatile Map.Entry<Position, S> current;
+    private volatile Optional<RuntimeException> failure = Optional.empty();
+
+    private Projected(String name, Optional<String> type, Projection<S> projection, Map.Entry<Position, S> current) {
+        this.name = name;
+        this.type = type;
+        this.projection = projection;
+        this.current = current;
+    }
+
+    /**
+     * Starts from the checkpoint of the projection when it folds the same events and is not past the given position,
+     * from the initial state otherwise.
+     */
+    static <S> Projected<S> restore(Path directory, String name, Optional<String> type, Projection<S> projection, Position lastPublished) {
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("projection name must match " + NAME + ": " + name);
+        }
+        Map.Entry<Position, S> initial = new SimpleImmutableEntry<>(Position.ORIGIN, projection.initial());
+        Path checkpoint = directory.resolve(name + EXTENSION);
+        if (!Files.exists(checkpoint)) {
+            return new Projected<>(name, type, projection, initial);
+        }
+        try {
+            String[] lines = new String(Files.readAllBytes(checkpoint), UTF_8).split("\n", 3);
+            if (lines.length == 3 && lines[1].equals(type.orElse(""))) {
+                Position position = Position.fromCursor(lines[0]);
+                if (position.compareTo(lastPublished) <= 0) {
+                    return new Projected<>(name, type, projection, new SimpleImmutableEntry<>(position, projection.decode(lines[2])));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (IllegalArgumentException e) {
+            // a checkpoint of another projection with the same name: folded again from the first event
+        }
+        return new Projected<>(name, type, projection, initial);
+    }
+
+    Optional<String> getType() {
+        return type;
+    }
+
+    Position position() {
+        return current.getKey();
+    }
+
+    S state() {
+        return current.getValue();
+    }
+
+    /**
+     * Gives the encoded state with the position of the last event it folded.
+     */
+    Map.Entry<Position, String> encoded() {
+        Map.Entry<Position, S> snapshot = current;
+        return new SimpleImmutableEntry<>(snapshot.getKey(), projection.encode(snapshot.getValue()));
+    }
+
+    /**
+     * Why the projection stopped folding events, if it did: its state stays the one of the last event it folded.
+     */
+    Optional<RuntimeException> failure() {
+        return failure;
+    }
+
+    void stop(RuntimeException cause) {
+        failure = Optional.of(cause);
+    }
+
+    /**
+     * Folds the event unless it is of another type, was already folded or the projection stopped. Events are given
+     * one at a time, in order.
+     */
+    void apply(Position position, Event event) {
+        Map.Entry<Position, S> previous = current;
+        if (failure.isPresent() || position.compareTo(previous.getKey()) <= 0 || (type.isPresent() && !type.get().equals(event.type))) {
+            return;
+        }
+        current = new SimpleImmutableEntry<>(position, projection.apply(previous.getValue(), event));
+    }
+
+    /**
+     * Writes the given encoded state as the checkpoint, which only gets its final name once completely written and
+     * forced to disk. The journal must already hold every event folded into this state.
+     */
+    void checkpoint(Path directory, Map.Entry<Position, String> encoded) {
+        Path checkpoint = directory.resolve(name + EXTENSION);
+        Path temporary = Paths.get(checkpoint + TEMPORARY_EXTENSION);
+        byte[] content = (encoded.getKey().toCursor() + "\n" + type.orElse("") + "\n" + encoded.getValue()).getBytes(UTF_8);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, checkpoint, ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
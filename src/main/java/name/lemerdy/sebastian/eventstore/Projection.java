@@ -0,0 +1,37 @@
+package name.lemerdy.sebastian.eventstore;
+
+import java.util.Optional;
+
+/**
+ * An aggregate of events, such as how many of them were stored or which one was the latest, folded by the store as
+ * each event is published instead of being rebuilt by every reader. States are immutable: {@link #apply} gives a new
+ * state without changing the previous one, which readers may still hold.
+ * <p>
+ * A state is checkpointed as the JSON document given by {@link #encode}, the one served over HTTP, and read back by
+ * {@link #decode} at the next startup so that only the events published after the checkpoint are folded again.
+ */
+public interface Projection<S> {
+
+    S initial();
+
+    S apply(S state, Event event);
+
+    String encode(S state);
+
+    S decode(String encoded);
+
+    /**
+     * Number of events.
+     */
+    static Projection<Long> count() {
+        return new CountProjection();
+    }
+
+    /**
+     * Latest event, if any.
+     */
+    static Projection<Optional<Event>> latest() {
+        return new LatestProjection();
+    }
+
+}
@@ -0,0 +1,664 @@
+package name.lemerdy.sebastian.eventstore;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.CodingErrorAction.REPLACE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A file of the journal: a fixed-size header followed by records. Only the last segment of a journal is active and
+ * receives appends, the others are sealed and their header tells which records they hold. The rest of the header
+ * is reserved and left zeroed.
+ * <p>
+ * Each record is framed as {@code length (int), crc32 (int), kind (byte), body}, where the length and the CRC cover
+ * the kind and the body. An event body is {@code epoch seconds (long), nanos (long), type id (int), UTF-8 data}. Type
+ * ids are local to the segment: a type record {@code type id (int), UTF-8 name} precedes the first event of that type.
+ * A batch record {@code event count (int)} precedes the events of a batch: they are replayed all together or not at all.
+ * A compressed event body is {@code epoch seconds (long), nanos (long), type id (int), UTF-8 data length (int)} followed
+ * by the data deflated with a zlib wrapper: it is only written when compression is enabled and the data shrinks. Its
+ * preset dictionary is given by a dictionary record {@code type id (int), bytes}, which precedes the first compressed
+ * event of that type and holds the beginning of its data: payloads of the same type share most of their content, so
+ * that each of them compresses well while still being read on its own.
+ */
+class Segment implements AutoCloseable {
+
+    static final String EXTENSION = ".segment";
+    static final int HEADER_SIZE = 64;
+
+    static final int MAGIC = 0x45565347;
+    static final int BINARY_FORMAT = 2;
+    private static final int SEALED = 1;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int FORMAT_OFFSET = 4;
+    static final int FLAGS_OFFSET = 8;
+    private static final int FIRST_RECORD_OFFSET = 16;
+    private static final int RECORD_COUNT_OFFSET = 24;
+
+    private static final int FRAME_SIZE = Integer.BYTES + Integer.BYTES;
+    private static final byte TYPE_RECORD = 1;
+    private static final byte EVENT_RECORD = 2;
+    private static final byte BATCH_RECORD = 3;
+    private static final byte COMPRESSED_EVENT_RECORD = 4;
+    private static final byte DICTIONARY_RECORD = 5;
+    private static final int TYPE_BODY_SIZE = Byte.BYTES + Integer.BYTES;
+    private static final int BATCH_BODY_SIZE = Byte.BYTES + Integer.BYTES;
+    private static final int DICTIONARY_BODY_SIZE = Byte.BYTES + Integer.BYTES;
+    private static final int EVENT_BODY_SIZE = Byte.BYTES + Long.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int INITIAL_OFFSETS = 1024;
+    private static final int MIN_COMPRESSED_SIZE = 64;
+    private static final int MAX_DICTIONARY_SIZE = 4 * 1024;
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+    @Getter
+    private final Path path;
+    @Getter
+    private final long firstRecord;
+    private final FileChannel channel;
+    private final Map<String, Integer> typeIds;
+    private final List<String> types;
+    private final Map<Integer, byte[]> dictionaries;
+    private final CRC32 crc;
+    private final CharsetEncoder encoder;
+    private final boolean compression;
+
+    private ByteBuffer writeBuffer;
+    private Deflater deflater;
+    private byte[] deflated;
+    private volatile int[] offsets;
+    private int offsetCount;
+    private volatile boolean indexed;
+
+    @Getter
+    private long recordCount;
+    @Getter
+    private boolean sealed;
+
+    private Segment(Path path, long firstRecord, FileChannel channel, boolean compression) {
+        this.path = path;
+        this.firstRecord = firstRecord;
+        this.channel = channel;
+        this.typeIds = new HashMap<>();
+        this.types = new ArrayList<>();
+        this.dictionaries = new ConcurrentHashMap<>();
+        this.crc = new CRC32();
+        this.encoder = UTF_8.newEncoder().onMalformedInput(REPLACE).onUnmappableCharacter(REPLACE);
+        this.compression = compression;
+        this.writeBuffer = ByteBuffer.allocate(0);
+        this.deflated = new byte[0];
+        this.offsets = new int[0];
+    }
+
+    /**
+     * Creates an empty segment whose events will have their payload deflated when {@code compression} is set. Its
+     * header is forced before it is returned, so that the segment is never found without it once its directory entry
+     * is durable.
+     */
+    static Segment create(Path directory, long firstRecord, boolean compression) {
+        Path path = directory.resolve(String.format("%020d%s", firstRecord, EXTENSION));
+        try {
+            Segment segment = new Segment(path, firstRecord, FileChannel.open(path, CREATE_NEW, READ, WRITE), compression);
+            segment.writeHeader();
+            segment.force();
+            segment.channel.position(HEADER_SIZE);
+            segment.indexed = true;
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Segment open(Path path, boolean compression) {
+        try {
+            FileChannel channel = FileChannel.open(path, READ, WRITE);
+            ByteBuffer header = readHeader(channel);
+            if (header.hasRemaining() || header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(FORMAT_OFFSET) != BINARY_FORMAT) {
+                channel.close();
+                throw new IllegalStateException("not an event store segment: " + path);
+            }
+            Segment segment = new Segment(path, header.getLong(FIRST_RECORD_OFFSET), channel, compression);
+            if ((header.getInt(FLAGS_OFFSET) & SEALED) == SEALED) {
+                segment.sealed = true;
+                segment.recordCount = header.getLong(RECORD_COUNT_OFFSET);
+            }
+            channel.position(channel.size());
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Tells whether the segment was created but its header never reached the disk, which a crash leaves behind as a
+     * short or zero-filled header: no record of it was ever forced, as forcing them would have forced the header too.
+     */
+    static boolean isTornAtCreation(Path path) {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            ByteBuffer header = readHeader(channel);
+            return header.hasRemaining() || isZeroFilled(header, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        int read = 0;
+        while (header.hasRemaining() && read >= 0) {
+            read = channel.read(header, header.position());
+        }
+        return header;
+    }
+
+    /**
+     * Checks the framing of the records through a read-only mapping of the file, so that only the pages being read
+     * are loaded and the file never has to be copied onto the heap, and cuts the events into chunks that can be
+     * decoded concurrently. An active segment drops a torn last record left by a crash, any other invalid record is a
+     * corruption. The first {@code skipped} events are left out of the chunks, the offsets of all of them are kept.
+     */
+    synchronized List<Chunk> scan(long skipped) {
+        try {
+            MappedByteBuffer records = channel.map(READ_ONLY, HEADER_SIZE, channel.size() - HEADER_SIZE);
+            List<Integer> boundaries = new ArrayList<>();
+            byte[] scratch = new byte[0];
+            long scanned = 0;
+            types.clear();
+            typeIds.clear();
+            dictionaries.clear();
+            offsetCount = 0;
+            while (records.hasRemaining()) {
+                int start = records.position();
+                int length = records.remaining() >= FRAME_SIZE ? records.getInt(start) : -1;
+                boolean last = length < 0 || start + FRAME_SIZE + length >= records.limit();
+                if (length < TYPE_BODY_SIZE || length > records.remaining() - FRAME_SIZE || (last && !hasValidCrc(records, start, length, crc))) {
+                    if (!sealed && (last || isZeroFilled(records, start))) {
+                        truncate(start);
+                        break;
+                    }
+                    throw new IllegalStateException("corrupted record at offset " + (HEADER_SIZE + start) + " of " + path);
+                }
+                records.position(start + FRAME_SIZE);
+                byte kind = records.get();
+                int end = start + FRAME_SIZE + length;
+                if (kind == TYPE_RECORD) {
+                    if (!hasValidCrc(records, start, length, crc)) {
+                        throw new IllegalStateException("corrupted record at offset " + (HEADER_SIZE + start) + " of " + path);
+                    }
+                    int typeId = records.getInt();
+                    int nameLength = end - records.position();
+                    scratch = read(records, nameLength, scratch);
+                    register(new String(scratch, 0, nameLength, UTF_8), typeId);
+                } else if (kind == DICTIONARY_RECORD) {
+                    if (!hasValidCrc(records, start, length, crc)) {
+                        throw new IllegalStateException("corrupted record at offset " + (HEADER_SIZE + start) + " of " + path);
+                    }
+                    int typeId = records.getInt();
+                    byte[] dictionary = new byte[end - records.position()];
+                    records.get(dictionary);
+                    dictionaries.put(typeId, dictionary);
+                } else if (kind == BATCH_RECORD) {
+                    if (!hasValidCrc(records, start, length, crc)) {
+                        throw new IllegalStateException("corrupted record at offset " + (HEADER_SIZE + start) + " of " + path);
+                    }
+                    if (!isComplete(records, end, records.getInt())) {
+                        if (sealed) {
+                            throw new IllegalStateException("incomplete batch at offset " + (HEADER_SIZE + start) + " of " + path);
+                        }
+                        truncate(start);
+                        break;
+                    }
+                } else if (isEvent(kind)) {
+                    if (scanned >= skipped && (boundaries.isEmpty() || start - boundaries.get(boundaries.size() - 1) >= CHUNK_SIZE)) {
+                        boundaries.add(start);
+                    }
+                    addOffset(start);
+                    scanned++;
+                } else {
+                    throw new IllegalStateException("unknown record kind " + kind + " at offset " + (HEADER_SIZE + start) + " of " + path);
+                }
+                records.position(end);
+            }
+            recordCount = scanned;
+            indexed = true;
+            boundaries.add(records.position());
+            List<String> chunkTypes = new ArrayList<>(types);
+            Map<Integer, byte[]> chunkDictionaries = new HashMap<>(dictionaries);
+            List<Chunk> chunks = new ArrayList<>();
+            for (int i = 0; i + 1 < boundaries.size(); i++) {
+                chunks.add(new Chunk(records, boundaries.get(i), boundaries.get(i + 1), chunkTypes, chunkDictionaries));
+            }
+            return chunks;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Tells whether the events of a batch starting at the given offset were all written, the last record of the
+     * segment being checked as it could be torn.
+     */
+    private boolean isComplete(ByteBuffer records, int position, int eventCount) {
+        int events = 0;
+        while (events < eventCount) {
+            if (records.limit() - position < FRAME_SIZE) {
+                return false;
+            }
+            int length = records.getInt(position);
+            int next = position + FRAME_SIZE + length;
+            if (length < TYPE_BODY_SIZE || next > records.limit() || (next == records.limit() && !hasValidCrc(records, position, length, crc))) {
+                return false;
+            }
+            if (isEvent(records.get(position + FRAME_SIZE))) {
+                events++;
+            }
+            position = next;
+        }
+        return true;
+    }
+
+    private void truncate(int start) throws IOException {
+        channel.truncate(HEADER_SIZE + start);
+        channel.position(HEADER_SIZE + start);
+    }
+
+    /**
+     * Consecutive records of a segment whose types are known, decoded independently from the other chunks.
+     */
+    class Chunk {
+
+        private final ByteBuffer records;
+        private final int start;
+        private final int end;
+        private final List<String> types;
+        private final Map<Integer, byte[]> dictionaries;
+
+        private Chunk(ByteBuffer records, int start, int end, List<String> types, Map<Integer, byte[]> dictionaries) {
+            this.records = records.duplicate();
+            this.start = start;
+            this.end = end;
+            this.types = types;
+            this.dictionaries = dictionaries;
+        }
+
+        List<Event> decode() {
+            List<Event> events = new ArrayList<>();
+            CRC32 crc = new CRC32();
+            byte[] scratch = new byte[0];
+            int position = start;
+            while (position < end) {
+                int length = records.getInt(position);
+                if (!hasValidCrc(records, position, length, crc)) {
+                    throw new IllegalStateException("corrupted record at offset " + (HEADER_SIZE + position) + " of " + path);
+                }
+                int next = position + FRAME_SIZE + length;
+                byte kind = records.get(position + FRAME_SIZE);
+                if (isEvent(kind)) {
+                    records.position(position + FRAME_SIZE + Byte.BYTES);
+                    Instant date = Instant.ofEpochSecond(records.getLong(), records.getLong());
+                    int typeId = records.getInt();
+                    int dataLength = next - records.position();
+                    scratch = read(records, dataLength, scratch);
+                    String data = payload(kind, scratch, 0, dataLength, dictionaries.get(typeId), HEADER_SIZE + position);
+                    events.add(new Event(date, types.get(typeId), data));
+                }
+                position = next;
+            }
+            return events;
+        }
+
+    }
+
+    /**
+     * Reads back the payload of an event of this segment, given its index among the events of the segment, without
+     * disturbing appends. The offsets of a sealed segment skipped at startup are found on first read.
+     */
+    String data(long index) {
+        if (!indexed) {
+            synchronized (this) {
+                if (!indexed) {
+                    scan(recordCount);
+                }
+            }
+        }
+        long position = HEADER_SIZE + offsets[(int) index];
+        try {
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_SIZE);
+            readFully(frame, position);
+            int length = frame.getInt(0);
+            ByteBuffer record = ByteBuffer.allocate(FRAME_SIZE + length);
+            readFully(record, position);
+            byte kind = record.get(FRAME_SIZE);
+            if (length < EVENT_BODY_SIZE || !isEvent(kind) || !hasValidCrc(record, 0, length, new CRC32())) {
+                throw new IllegalStateException("corrupted record at offset " + position + " of " + path);
+            }
+            int dataOffset = FRAME_SIZE + EVENT_BODY_SIZE;
+            byte[] dictionary = kind == EVENT_RECORD ? null : dictionaries.get(record.getInt(FRAME_SIZE + Byte.BYTES + Long.BYTES + Long.BYTES));
+            return payload(kind, record.array(), dataOffset, record.capacity() - dataOffset, dictionary, position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decodes the data of an event record, inflating it first when the record is compressed. Each reading thread
+     * keeps its inflater, which is reset for every record.
+     */
+    private String payload(byte kind, byte[] bytes, int offset, int length, byte[] dictionary, long recordOffset) {
+        if (kind == EVENT_RECORD) {
+            return new String(bytes, offset, length, UTF_8);
+        }
+        int size = length < Integer.BYTES ? -1 : ByteBuffer.wrap(bytes, offset, Integer.BYTES).getInt();
+        if (size < 0) {
+            throw new IllegalStateException("corrupted record at offset " + recordOffset + " of " + path);
+        }
+        byte[] inflated = new byte[size];
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(bytes, offset + Integer.BYTES, length - Integer.BYTES);
+        try {
+            int inflatedSize = inflater.inflate(inflated);
+            if (inflater.needsDictionary() && dictionary != null) {
+                inflater.setDictionary(dictionary);
+                inflatedSize = inflater.inflate(inflated);
+            }
+            if (inflatedSize != size || !inflater.finished()) {
+                throw new IllegalStateException("corrupted record at offset " + recordOffset + " of " + path);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("corrupted record at offset " + recordOffset + " of " + path, e);
+        }
+        return new String(inflated, UTF_8);
+    }
+
+    private static boolean isEvent(byte kind) {
+        return kind == EVENT_RECORD || kind == COMPRESSED_EVENT_RECORD;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IllegalStateException("truncated record at offset " + position + " of " + path);
+            }
+        }
+    }
+
+    long size() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends as many of the given batches of events as the segment can hold without growing past {@code maxSize},
+     * with a single write, and returns how many were appended. A batch is appended whole or not at all, and an empty
+     * segment always takes at least one batch.
+     */
+    int append(List<List<Event>> batches, long maxSize) {
+        long size = size();
+        writeBuffer.clear();
+        int appended = 0;
+        int events = 0;
+        int[] starts = new int[batches.stream().mapToInt(List::size).sum()];
+        List<Integer> newDictionaries = new ArrayList<>();
+        for (List<Event> batch : batches) {
+            int mark = writeBuffer.position();
+            int knownTypes = types.size();
+            newDictionaries.clear();
+            if (batch.size() > 1) {
+                encodeBatch(batch.size());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                Event event = batch.get(i);
+                if (!typeIds.containsKey(event.type)) {
+                    register(event.type, types.size());
+                    encodeType(event.type);
+                }
+                int typeId = typeIds.get(event.type);
+                if (compression && event.data.length() >= MIN_COMPRESSED_SIZE && !dictionaries.containsKey(typeId)) {
+                    encodeDictionary(typeId, event.data);
+                    newDictionaries.add(typeId);
+                }
+                starts[events + i] = (int) (size - HEADER_SIZE) + writeBuffer.position();
+                encodeEvent(event);
+            }
+            if (size + writeBuffer.position() > maxSize && (appended > 0 || recordCount > 0)) {
+                writeBuffer.position(mark);
+                newDictionaries.forEach(dictionaries::remove);
+                while (types.size() > knownTypes) {
+                    typeIds.remove(types.remove(types.size() - 1));
+                }
+                break;
+            }
+            appended++;
+            events += batch.size();
+        }
+        writeBuffer.flip();
+        try {
+            while (writeBuffer.hasRemaining()) {
+                channel.write(writeBuffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (int i = 0; i < events; i++) {
+            addOffset(starts[i]);
+        }
+        recordCount += events;
+        return appended;
+    }
+
+    void force() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void seal() {
+        sealed = true;
+        try {
+            writeHeader();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        force();
+    }
+
+    private void encodeType(String type) {
+        int start = beginRecord(TYPE_BODY_SIZE + type.length() * 3, TYPE_RECORD);
+        writeBuffer.putInt(typeIds.get(type));
+        encodeString(type);
+        endRecord(start);
+    }
+
+    private void encodeBatch(int eventCount) {
+        int start = beginRecord(BATCH_BODY_SIZE, BATCH_RECORD);
+        writeBuffer.putInt(eventCount);
+        endRecord(start);
+    }
+
+    private void encodeDictionary(int typeId, String data) {
+        int start = beginRecord(DICTIONARY_BODY_SIZE + data.length() * 3, DICTIONARY_RECORD);
+        writeBuffer.putInt(typeId);
+        int dictionaryStart = writeBuffer.position();
+        encodeString(data);
+        writeBuffer.position(Math.min(writeBuffer.position(), dictionaryStart + MAX_DICTIONARY_SIZE));
+        endRecord(start);
+        dictionaries.put(typeId, Arrays.copyOfRange(writeBuffer.array(), dictionaryStart, writeBuffer.position()));
+    }
+
+    private void encodeEvent(Event event) {
+        int start = beginRecord(EVENT_BODY_SIZE + Integer.BYTES + event.data.length() * 3, EVENT_RECORD);
+        int typeId = typeIds.get(event.type);
+        writeBuffer.putLong(event.date.getEpochSecond());
+        writeBuffer.putLong(event.date.getNano());
+        writeBuffer.putInt(typeId);
+        int dataStart = writeBuffer.position();
+        encodeString(event.data);
+        if (compression && dictionaries.containsKey(typeId)) {
+            compress(start, dataStart, dictionaries.get(typeId));
+        }
+        endRecord(start);
+    }
+
+    /**
+     * Replaces the data just encoded by its deflated form, prefixed by its length, when that is shorter. Small
+     * payloads are left as is: they hardly shrink and inflating them would cost more than reading them.
+     */
+    private void compress(int start, int dataStart, byte[] dictionary) {
+        int length = writeBuffer.position() - dataStart;
+        if (length < MIN_COMPRESSED_SIZE) {
+            return;
+        }
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+        }
+        if (deflated.length < length) {
+            deflated = new byte[Math.max(length, deflated.length * 2)];
+        }
+        deflater.reset();
+        deflater.setDictionary(dictionary);
+        deflater.setInput(writeBuffer.array(), dataStart, length);
+        deflater.finish();
+        int size = deflater.deflate(deflated, 0, length - Integer.BYTES);
+        if (!deflater.finished()) {
+            return;
+        }
+        writeBuffer.put(start + FRAME_SIZE, COMPRESSED_EVENT_RECORD);
+        writeBuffer.position(dataStart);
+        writeBuffer.putInt(length);
+        writeBuffer.put(deflated, 0, size);
+    }
+
+    private int beginRecord(int maxBodySize, byte kind) {
+        ensureCapacity(FRAME_SIZE + maxBodySize);
+        int start = writeBuffer.position();
+        writeBuffer.position(start + FRAME_SIZE);
+        writeBuffer.put(kind);
+        return start;
+    }
+
+    private void endRecord(int start) {
+        int end = writeBuffer.position();
+        int length = end - start - FRAME_SIZE;
+        ByteBuffer body = writeBuffer.duplicate();
+        body.position(start + FRAME_SIZE).limit(end);
+        crc.reset();
+        crc.update(body);
+        writeBuffer.putInt(start, length);
+        writeBuffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+    }
+
+    private void encodeString(String value) {
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(value), writeBuffer, true);
+        encoder.flush(writeBuffer);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (writeBuffer.remaining() >= needed) {
+            return;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(INITIAL_BUFFER_SIZE, Math.max(writeBuffer.capacity() * 2, writeBuffer.position() + needed)));
+        writeBuffer.flip();
+        larger.put(writeBuffer);
+        writeBuffer = larger;
+    }
+
+    private static boolean hasValidCrc(ByteBuffer records, int start, int length, CRC32 crc) {
+        ByteBuffer body = records.duplicate();
+        body.position(start + FRAME_SIZE).limit(start + FRAME_SIZE + length);
+        crc.reset();
+        crc.update(body);
+        return (int) crc.getValue() == records.getInt(start + Integer.BYTES);
+    }
+
+    private static boolean isZeroFilled(ByteBuffer records, int start) {
+        for (int i = start; i < records.limit(); i++) {
+            if (records.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] read(ByteBuffer records, int length, byte[] scratch) {
+        byte[] bytes = scratch.length >= length ? scratch : new byte[Math.max(length, scratch.length * 2)];
+        records.get(bytes, 0, length);
+        return bytes;
+    }
+
+    private void addOffset(int offset) {
+        if (offsetCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(INITIAL_OFFSETS, offsetCount * 2));
+        }
+        offsets[offsetCount++] = offset;
+    }
+
+    private void register(String type, int typeId) {
+        typeIds.put(type, typeId);
+        while (types.size() <= typeId) {
+            types.add(null);
+        }
+        types.set(typeId, type);
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC_OFFSET, MAGIC);
+        header.putInt(FORMAT_OFFSET, BINARY_FORMAT);
+        header.putInt(FLAGS_OFFSET, sealed ? SEALED : 0);
+        header.putLong(FIRST_RECORD_OFFSET, firstRecord);
+        header.putLong(RECORD_COUNT_OFFSET, recordCount);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    static boolean isSegment(Path path) {
+        return Files.isRegularFile(path) && path.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    @Override
+    public void close() {
+        if (deflater != null) {
+            deflater.end();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
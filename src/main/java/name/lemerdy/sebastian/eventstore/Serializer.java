@@ -1,19 +1,69 @@
 package name.lemerdy.sebastian.eventstore;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.function.Function;
 
+/**
+ * Escapes a string to be written between double quotes in a JSON document, in a single pass: runs of characters
+ * that need no escape are copied as is and a string without any such character is returned unchanged.
+ */
 public class Serializer implements Function<String, String> {
 
+    private static final String[] ESCAPES = new String[128];
+
+    static {
+        for (char c = 0; c < 0x20; c++) {
+            ESCAPES[c] = String.format("\\u%04x", (int) c);
+        }
+        ESCAPES['\\'] = "\\\\";
+        ESCAPES['"'] = "\\\"";
+        ESCAPES['/'] = "\\/";
+        ESCAPES['\b'] = "\\b";
+        ESCAPES['\f'] = "\\f";
+        ESCAPES['\n'] = "\\n";
+        ESCAPES['\r'] = "\\r";
+        ESCAPES['\t'] = "\\t";
+    }
+
     @Override
     public String apply(String s) {
-        return s
-                .replaceAll("\\\\", "\\\\\\\\")
-                .replaceAll("\"", "\\\\\"")
-                .replaceAll("/", "\\\\/")
-                .replaceAll("\b", "\\\\b")
-                .replaceAll("\f", "\\\\f")
-                .replaceAll("\n", "\\\\n")
-                .replaceAll("\t", "\\\\t");
+        StringBuilder escaped = null;
+        int run = 0;
+        for (int i = 0; i < s.length(); i++) {
+            String escape = escape(s.charAt(i));
+            if (escape != null) {
+                if (escaped == null) {
+                    escaped = new StringBuilder(s.length() + 16);
+                }
+                escaped.append(s, run, i).append(escape);
+                run = i + 1;
+            }
+        }
+        if (escaped == null) {
+            return s;
+        }
+        return escaped.append(s, run, s.length()).toString();
+    }
+
+    /**
+     * Same as {@link #apply(String)} but straight into the writer, without building the escaped string.
+     */
+    void write(String s, Writer out) throws IOException {
+        int run = 0;
+        for (int i = 0; i < s.length(); i++) {
+            String escape = escape(s.charAt(i));
+            if (escape != null) {
+                out.write(s, run, i - run);
+                out.write(escape);
+                run = i + 1;
+            }
+        }
+        out.write(s, run, s.length() - run);
+    }
+
+    private static String escape(char c) {
+        return c < ESCAPES.length ? ESCAPES[c] : null;
     }
 
 }
@@ -0,0 +1,88 @@
+package name.lemerdy.sebastian.eventstore;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.experimental.PackagePrivate;
+import lombok.experimental.Wither;
+
+import java.util.Optional;
+import java.util.function.Function;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Value
+@Wither
+@AllArgsConstructor(access = PRIVATE)
+public class ServerOptions {
+
+    @PackagePrivate
+    static final String PORT_SYSTEM_PROPERTY_KEY = "port";
+    @PackagePrivate
+    static final String WORKERS_SYSTEM_PROPERTY_KEY = "workers";
+    @PackagePrivate
+    static final String SELECTORS_SYSTEM_PROPERTY_KEY = "selectors";
+    @PackagePrivate
+    static final String RESPONSE_BUFFER_SIZE_SYSTEM_PROPERTY_KEY = "responseBufferSize";
+    @PackagePrivate
+    static final String MAX_CONCURRENT_REQUESTS_SYSTEM_PROPERTY_KEY = "maxConcurrentRequests";
+    @PackagePrivate
+    static final String EXECUTION_SYSTEM_PROPERTY_KEY = "execution";
+
+    public enum Execution {
+        /**
+         * Requests are handled by the pool of workers, except subscriptions that each get their own thread so that
+         * long-lived consumers never hold a worker.
+         */
+        WORKERS,
+        /**
+         * Every request is handled by its own virtual thread, which needs a Java 21 runtime.
+         */
+        VIRTUAL_THREADS
+    }
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_WORKERS = 2 * Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_SELECTORS = 1;
+    private static final int DEFAULT_RESPONSE_BUFFER_SIZE = 8 * 1024;
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 1024;
+
+    int port;
+    /**
+     * Threads handling requests in {@link Execution#WORKERS} mode.
+     */
+    int workers;
+    /**
+     * Threads selecting the sockets ready to be read or written.
+     */
+    int selectors;
+    /**
+     * Bytes of a response encoded, or compressed, before being handed to the server: it sizes the writers of the
+     * responses, not the buffers of the sockets.
+     */
+    int responseBufferSize;
+    /**
+     * Requests handled at the same time, subscriptions included: the next ones are answered 503 Service Unavailable.
+     * It does not bound the connections, which the server keeps accepting, open or idle, whatever their number.
+     */
+    int maxConcurrentRequests;
+    Execution execution;
+
+    public static ServerOptions defaults() {
+        return new ServerOptions(DEFAULT_PORT, DEFAULT_WORKERS, DEFAULT_SELECTORS, DEFAULT_RESPONSE_BUFFER_SIZE, DEFAULT_MAX_CONCURRENT_REQUESTS, Execution.WORKERS);
+    }
+
+    static ServerOptions fromSystemProperties() {
+        return defaults()
+                .withPort(property(PORT_SYSTEM_PROPERTY_KEY, Integer::parseInt).orElse(DEFAULT_PORT))
+                .withWorkers(property(WORKERS_SYSTEM_PROPERTY_KEY, Integer::parseInt).orElse(DEFAULT_WORKERS))
+                .withSelectors(property(SELECTORS_SYSTEM_PROPERTY_KEY, Integer::parseInt).orElse(DEFAULT_SELECTORS))
+                .withResponseBufferSize(property(RESPONSE_BUFFER_SIZE_SYSTEM_PROPERTY_KEY, Integer::parseInt).orElse(DEFAULT_RESPONSE_BUFFER_SIZE))
+                .withMaxConcurrentRequests(property(MAX_CONCURRENT_REQUESTS_SYSTEM_PROPERTY_KEY, Integer::parseInt).orElse(DEFAULT_MAX_CONCURRENT_REQUESTS))
+                .withExecution(property(EXECUTION_SYSTEM_PROPERTY_KEY, value -> Execution.valueOf(value.toUpperCase())).orElse(Execution.WORKERS));
+    }
+
+    private static <T> Optional<T> property(String key, Function<String, T> parser) {
+        return Optional.ofNullable(System.getProperty(key)).map(parser);
+    }
+
+}
@@ -0,0 +1,280 @@
+package name.lemerdy.sebastian.eventstore;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * A copy of every event of a store up to a record, kept next to the segments so that startup only replays the
+ * records written after it. The file is named after the number of records it holds and only the latest one is kept.
+ * <p>
+ * It starts with {@code magic (int), format (int), record count (long), last epoch seconds (long), last nanos (int)}
+ * followed by records {@code kind (byte), body} ended by an end kind and the CRC32 of all the preceding bytes (long).
+ * A type body is {@code type id (int), length (int), UTF-8 name} and comes before the first event of that type, an
+ * event body is {@code epoch seconds (long), nanos (int), sequence (long), type id (int), length (int), UTF-8 data}.
+ * <p>
+ * Events are written in the order of their positions, which is not the order of their records when an old journal
+ * holds dates going backwards: each event keeps the sequence of its record, so that it is restored at the position
+ * a replay of the journal gives it. Snapshots of another format are ignored, the journal being replayed instead.
+ */
+class Snapshot {
+
+    static final String EXTENSION = ".snapshot";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    private static final int MAGIC = 0x45565350;
+    private static final int FORMAT = 2;
+    private static final byte END = 0;
+    private static final byte TYPE_RECORD = 1;
+    private static final byte EVENT_RECORD = 2;
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int TYPE_BODY_SIZE = Integer.BYTES + Integer.BYTES;
+    private static final int EVENT_BODY_SIZE = Long.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Writes the given events with their positions, which must be all the events of the store up to {@code last},
+     * then removes the previous snapshots. The file only gets its final name once completely written and forced to
+     * disk.
+     */
+    static void write(Path directory, Position last, Iterable<Map.Entry<Position, Event>> events) {
+        long recordCount = last.getSequence() + 1;
+        Path snapshot = directory.resolve(String.format("%020d%s", recordCount, EXTENSION));
+        if (Files.exists(snapshot)) {
+            return;
+        }
+        Path temporary = Paths.get(snapshot + TEMPORARY_EXTENSION);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, WRITE)) {
+                CRC32 crc = new CRC32();
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(Channels.newOutputStream(channel), crc), BUFFER_SIZE));
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeLong(recordCount);
+                out.writeLong(last.getDate().getEpochSecond());
+                out.writeInt(last.getDate().getNano());
+                Map<String, Integer> typeIds = new HashMap<>();
+                long written = 0;
+                for (Map.Entry<Position, Event> entry : events) {
+                    Event event = entry.getValue();
+                    Integer typeId = typeIds.get(event.type);
+                    if (typeId == null) {
+                        typeId = typeIds.size();
+                        typeIds.put(event.type, typeId);
+                        out.writeByte(TYPE_RECORD);
+                        out.writeInt(typeId);
+                        writeString(out, event.type);
+                    }
+                    out.writeByte(EVENT_RECORD);
+                    out.writeLong(event.date.getEpochSecond());
+                    out.writeInt(event.date.getNano());
+                    out.writeLong(entry.getKey().getSequence());
+                    out.writeInt(typeId);
+                    writeString(out, event.data);
+                    written++;
+                }
+                if (written != recordCount) {
+                    throw new IllegalStateException("snapshot of " + recordCount + " records got " + written + " events");
+                }
+                out.writeByte(END);
+                out.flush();
+                out.writeLong(crc.getValue());
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, snapshot, ATOMIC_MOVE);
+            Journal.forceDirectory(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path previous : (Iterable<Path>) files.filter(Snapshot::isSnapshotOrTemporary)::iterator) {
+                    if (!previous.equals(snapshot)) {
+                        Files.delete(previous);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gives the events of the latest valid snapshot of the directory with their positions, and returns the position
+     * of the last one. A snapshot whose checksum does not match is ignored for the previous one, if any.
+     */
+    static Optional<Position> read(Path directory, BiConsumer<Position, Event> consumer) {
+        if (!Files.isDirectory(directory)) {
+            return Optional.empty();
+        }
+        try {
+            List<Path> snapshots = snapshots(directory);
+            snapshots.sort(Comparator.reverseOrder());
+            for (Path snapshot : snapshots) {
+                if (hasValidChecksum(snapshot) && hasCurrentFormat(snapshot)) {
+                    return Optional.of(restore(snapshot, consumer));
+                }
+            }
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Position restore(Path snapshot, BiConsumer<Position, Event> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot, READ)) {
+            Input in = new Input(channel);
+            ByteBuffer header = in.next(HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT) {
+                throw new IllegalStateException("not an event store snapshot: " + snapshot);
+            }
+            long recordCount = header.getLong();
+            Position last = new Position(Instant.ofEpochSecond(header.getLong(), header.getInt()), recordCount - 1);
+            List<String> types = new ArrayList<>();
+            long restored = 0;
+            for (byte kind = in.next(Byte.BYTES).get(); kind != END; kind = in.next(Byte.BYTES).get()) {
+                if (kind == TYPE_RECORD) {
+                    ByteBuffer body = in.next(TYPE_BODY_SIZE);
+                    int typeId = body.getInt();
+                    String type = in.string(body.getInt());
+                    while (types.size() <= typeId) {
+                        types.add(null);
+                    }
+                    types.set(typeId, type);
+                } else if (kind == EVENT_RECORD) {
+                    ByteBuffer body = in.next(EVENT_BODY_SIZE);
+                    Instant date = Instant.ofEpochSecond(body.getLong(), body.getInt());
+                    long sequence = body.getLong();
+                    String type = types.get(body.getInt());
+                    String data = in.string(body.getInt());
+                    consumer.accept(new Position(date, sequence), new Event(date, type, data));
+                    restored++;
+                } else {
+                    throw new IllegalStateException("unknown record kind " + kind + " in " + snapshot);
+                }
+            }
+            if (restored != recordCount) {
+                throw new IllegalStateException("snapshot of " + recordCount + " records holds " + restored + " events: " + snapshot);
+            }
+            return last;
+        }
+    }
+
+    private static boolean hasCurrentFormat(Path snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot, READ)) {
+            ByteBuffer header = new Input(channel).next(Integer.BYTES + Integer.BYTES);
+            return header.getInt() == MAGIC && header.getInt() == FORMAT;
+        }
+    }
+
+    private static boolean hasValidChecksum(Path snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot, READ)) {
+            long checked = channel.size() - Long.BYTES;
+            if (checked < HEADER_SIZE + Byte.BYTES) {
+                return false;
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            long position = 0;
+            while (position < checked) {
+                buffer.clear().limit((int) Math.min(BUFFER_SIZE, checked - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    return false;
+                }
+                buffer.flip();
+                crc.update(buffer);
+                position += read;
+            }
+            ByteBuffer checksum = ByteBuffer.allocate(Long.BYTES);
+            int read = 0;
+            while (checksum.hasRemaining() && read >= 0) {
+                read = channel.read(checksum, checked + checksum.position());
+            }
+            return !checksum.hasRemaining() && checksum.getLong(0) == crc.getValue();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static boolean isSnapshotOrTemporary(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(EXTENSION) || name.endsWith(EXTENSION + TEMPORARY_EXTENSION);
+    }
+
+    private static List<Path> snapshots(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(EXTENSION)).collect(toList());
+        }
+    }
+
+    /**
+     * Reads the file sequentially through a heap buffer that strings are decoded from without any copy, and that
+     * grows when a record does not fit.
+     */
+    private static class Input {
+
+        private final FileChannel channel;
+        private ByteBuffer buffer;
+
+        Input(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            this.buffer.flip();
+        }
+
+        ByteBuffer next(int length) throws IOException {
+            if (buffer.remaining() < length) {
+                if (buffer.capacity() < length) {
+                    buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2)).put(buffer);
+                } else {
+                    buffer.compact();
+                }
+                while (buffer.position() < length) {
+                    if (channel.read(buffer) < 0) {
+                        throw new EOFException();
+                    }
+                }
+                buffer.flip();
+            }
+            return buffer;
+        }
+
+        String string(int length) throws IOException {
+            ByteBuffer bytes = next(length);
+            String string = new String(bytes.array(), bytes.arrayOffset() + bytes.position(), length, UTF_8);
+            bytes.position(bytes.position() + length);
+            return string;
+        }
+
+    }
+
+}
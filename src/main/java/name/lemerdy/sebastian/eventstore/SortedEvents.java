@@ -0,0 +1,181 @@
+package name.lemerdy.sebastian.eventstore;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Events gathered at startup in the order they are loaded. When their positions are ascending, which is the case
+ * unless an old journal holds dates going backwards, the skip list is built from them in linear time instead of
+ * inserting them one by one.
+ */
+class SortedEvents {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Position[] positions = new Position[INITIAL_CAPACITY];
+    private Event[] events = new Event[INITIAL_CAPACITY];
+    private int size;
+    private boolean ascending = true;
+
+    void add(Position position, Event event) {
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+            events = Arrays.copyOf(events, size * 2);
+        }
+        if (size > 0 && positions[size - 1].compareTo(position) >= 0) {
+            ascending = false;
+        }
+        positions[size] = position;
+        events[size] = event;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Only the constructor of {@link ConcurrentSkipListMap} taking a {@link SortedMap} trusts the order of the
+     * entries and links them without searching where each one goes.
+     */
+    ConcurrentNavigableMap<Position, Event> toSkipList() {
+        if (ascending) {
+            return new ConcurrentSkipListMap<>(new Range(positions, events, 0, size));
+        }
+        ConcurrentSkipListMap<Position, Event> skipList = new ConcurrentSkipListMap<>();
+        for (int i = 0; i < size; i++) {
+            skipList.put(positions[i], events[i]);
+        }
+        return skipList;
+    }
+
+    /**
+     * Read-only view of the events from {@code from} included to {@code to} excluded, whose positions are ascending.
+     */
+    private static class Range extends AbstractMap<Position, Event> implements SortedMap<Position, Event> {
+
+        private final Position[] positions;
+        private final Event[] events;
+        private final int from;
+        private final int to;
+
+        Range(Position[] positions, Event[] events, int from, int to) {
+            this.positions = positions;
+            this.events = events;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public Event get(Object key) {
+            int index = indexOf(key);
+            return index >= 0 ? events[index] : null;
+        }
+
+        @Override
+        public Set<Entry<Position, Event>> entrySet() {
+            return new AbstractSet<Entry<Position, Event>>() {
+                @Override
+                public Iterator<Entry<Position, Event>> iterator() {
+                    return new Iterator<Entry<Position, Event>>() {
+                        private int next = from;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < to;
+                        }
+
+                        @Override
+                        public Entry<Position, Event> next() {
+                            if (next >= to) {
+                                throw new NoSuchElementException();
+                            }
+                            int current = next++;
+                            return new SimpleImmutableEntry<>(positions[current], events[current]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return to - from;
+                }
+            };
+        }
+
+        @Override
+        public Comparator<? super Position> comparator() {
+            return null;
+        }
+
+        @Override
+        public Position firstKey() {
+            if (from == to) {
+                throw new NoSuchElementException();
+            }
+            return positions[from];
+        }
+
+        @Override
+        public Position lastKey() {
+            if (from == to) {
+                throw new NoSuchElementException();
+            }
+            return positions[to - 1];
+        }
+
+        @Override
+        public SortedMap<Position, Event> subMap(Position fromKey, Position toKey) {
+            if (fromKey.compareTo(toKey) > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            return new Range(positions, events, ceiling(fromKey), ceiling(toKey));
+        }
+
+        @Override
+        public SortedMap<Position, Event> headMap(Position toKey) {
+            return new Range(positions, events, from, ceiling(toKey));
+        }
+
+        @Override
+        public SortedMap<Position, Event> tailMap(Position fromKey) {
+            return new Range(positions, events, ceiling(fromKey), to);
+        }
+
+        private int indexOf(Object key) {
+            if (!(key instanceof Position)) {
+                return -1;
+            }
+            int index = Arrays.binarySearch(positions, from, to, (Position) key);
+            return index >= 0 ? index : -1;
+        }
+
+        /**
+         * Index of the first event whose position is not before the given one, within this range.
+         */
+        private int ceiling(Position position) {
+            int index = Arrays.binarySearch(positions, from, to, position);
+            return index >= 0 ? index : -index - 1;
+        }
+
+    }
+
+}
@@ -0,0 +1,70 @@
+package name.lemerdy.sebastian.eventstore;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.experimental.PackagePrivate;
+import lombok.experimental.Wither;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Value
+@Wither
+@AllArgsConstructor(access = PRIVATE)
+public class StoreOptions {
+
+    @PackagePrivate
+    static final String SEGMENT_SIZE_SYSTEM_PROPERTY_KEY = "segmentSize";
+    @PackagePrivate
+    static final String SNAPSHOT_EVERY_SYSTEM_PROPERTY_KEY = "snapshotEvery";
+    @PackagePrivate
+    static final String MEMORY_LIMIT_SYSTEM_PROPERTY_KEY = "memoryLimit";
+    @PackagePrivate
+    static final String COMPRESSION_SYSTEM_PROPERTY_KEY = "compression";
+
+    private static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final long DEFAULT_SNAPSHOT_EVERY = 1_000_000;
+
+    Path path;
+    FsyncPolicy fsyncPolicy;
+    long segmentSize;
+    /**
+     * Number of records between two snapshots taken in the background, 0 to only take them on demand.
+     */
+    long snapshotEvery;
+    /**
+     * Bytes of payloads kept on the heap, the others being read back from the journal when needed, or 0 to keep
+     * every payload on the heap.
+     */
+    long memoryLimit;
+    /**
+     * Whether the payloads written to the journal are deflated, the ones that do not shrink being kept as is. Reads
+     * handle both, whatever this option was when they were written.
+     */
+    boolean compression;
+
+    public static StoreOptions defaults() {
+        return new StoreOptions(Paths.get(".eventstore"), FsyncPolicy.everyWrite(), DEFAULT_SEGMENT_SIZE, DEFAULT_SNAPSHOT_EVERY, 0, false);
+    }
+
+    static StoreOptions fromSystemProperties() {
+        return defaults()
+                .withFsyncPolicy(FsyncPolicy.fromSystemProperty())
+                .withSegmentSize(Optional.ofNullable(System.getProperty(SEGMENT_SIZE_SYSTEM_PROPERTY_KEY))
+                        .map(Long::parseLong)
+                        .orElse(DEFAULT_SEGMENT_SIZE))
+                .withSnapshotEvery(Optional.ofNullable(System.getProperty(SNAPSHOT_EVERY_SYSTEM_PROPERTY_KEY))
+                        .map(Long::parseLong)
+                        .orElse(DEFAULT_SNAPSHOT_EVERY))
+                .withMemoryLimit(Optional.ofNullable(System.getProperty(MEMORY_LIMIT_SYSTEM_PROPERTY_KEY))
+                        .map(Long::parseLong)
+                        .orElse(0L))
+                .withCompression(Optional.ofNullable(System.getProperty(COMPRESSION_SYSTEM_PROPERTY_KEY))
+                        .map(Boolean::parseBoolean)
+                        .orElse(false));
+    }
+
+}
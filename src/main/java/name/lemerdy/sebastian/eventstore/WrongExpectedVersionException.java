@@ -0,0 +1,15 @@
+package name.lemerdy.sebastian.eventstore;
+
+/**
+ * Thrown when an event is stored with an expected version that is not the current version of its stream: another
+ * writer appended to the stream in the meantime.
+ */
+public class WrongExpectedVersionException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    WrongExpectedVersionException(String type, long expectedVersion, long actualVersion) {
+        super("stream " + type + " is at version " + actualVersion + ", not " + expectedVersion);
+    }
+
+}
@@ -0,0 +1,241 @@
+package name.lemerdy.sebastian.eventstore;
+
+import name.lemerdy.sebastian.eventstore.testtools.DataFileRemover;
+import name.lemerdy.sebastian.eventstore.testtools.IncrementingClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventStoreConcurrencyTest {
+
+    private static final int WRITERS = 8;
+    private static final int READERS = 4;
+    private static final int EVENTS_PER_WRITER = 500;
+
+    @Rule
+    public DataFileRemover dataFileRemover = new DataFileRemover();
+
+    private ExecutorService executor;
+
+    @Before
+    public void createExecutor() {
+        executor = newFixedThreadPool(WRITERS + READERS);
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void should_not_lose_events_written_concurrently_with_synchronous_fsync() throws Exception {
+        should_not_lose_events_and_keep_reads_consistent(FsyncPolicy.everyWrite());
+    }
+
+    @Test
+    public void should_not_lose_events_written_concurrently_with_group_commit() throws Exception {
+        should_not_lose_events_and_keep_reads_consistent(FsyncPolicy.groupCommit());
+    }
+
+    private void should_not_lose_events_and_keep_reads_consistent(FsyncPolicy fsyncPolicy) throws Exception {
+        Instant now = Instant.now();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now), fsyncPolicy)) {
+            for (int writer = 0; writer < WRITERS; writer++) {
+                String type = "name.lemerdy.sebastian.type" + writer;
+                tasks.add(executor.submit((Callable<Void>) () -> {
+                    start.await();
+                    for (int i = 0; i < EVENTS_PER_WRITER; i++) {
+                        eventStore.store(type, Integer.toString(i));
+                    }
+                    return null;
+                }));
+            }
+            List<Future<?>> readers = new ArrayList<>();
+            for (int reader = 0; reader < READERS; reader++) {
+                readers.add(executor.submit((Callable<Void>) () -> {
+                    start.await();
+                    int previousSize = 0;
+                    while (writing.get()) {
+                        List<Event> events = eventStore.events();
+                        assertThat(events.size()).isGreaterThanOrEqualTo(previousSize);
+                        assertConsistent(events);
+                        previousSize = events.size();
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            writing.set(false);
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+
+            assertThat(eventStore.events()).hasSize(WRITERS * EVENTS_PER_WRITER);
+            assertConsistent(eventStore.events());
+        }
+
+        List<Event> replayed = new EventStore(Clock.systemUTC()).events();
+        assertThat(replayed).hasSize(WRITERS * EVENTS_PER_WRITER);
+        assertConsistent(replayed);
+    }
+
+    @Test
+    public void should_let_a_single_writer_win_each_version_of_a_stream() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+
+        try (EventStore eventStore = new EventStore(new IncrementingClock(Instant.now()), FsyncPolicy.groupCommit())) {
+            for (int writer = 0; writer < WRITERS; writer++) {
+                tasks.add(executor.submit((Callable<Void>) () -> {
+                    start.await();
+                    for (int i = 0; i < EVENTS_PER_WRITER / 10; i++) {
+                        boolean stored = false;
+                        while (!stored) {
+                            long version = eventStore.version("name.lemerdy.sebastian.type");
+                            try {
+                                eventStore.store("name.lemerdy.sebastian.type", Long.toString(version), version);
+                                stored = true;
+                            } catch (WrongExpectedVersionException e) {
+                                // another writer took this version, retry on top of it
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+
+            assertThat(eventStore.version("name.lemerdy.sebastian.type")).isEqualTo(WRITERS * EVENTS_PER_WRITER / 10);
+            assertConsistent(eventStore.events("name.lemerdy.sebastian.type"));
+        }
+    }
+
+    /**
+     * A writer only holds the sequencer while it writes its event: the event of another stream is written while the
+     * first one is still being published, here held by a projection.
+     */
+    @Test
+    public void should_write_another_stream_while_an_event_is_published_with_synchronous_fsync() throws Exception {
+        CountDownLatch publishing = new CountDownLatch(1);
+        CountDownLatch published = new CountDownLatch(1);
+        Projection<Long> blocking = new CountProjection() {
+            @Override
+            public Long apply(Long count, Event event) {
+                if (event.type.equals("name.lemerdy.sebastian.typeA")) {
+                    publishing.countDown();
+                    try {
+                        published.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.apply(count, event);
+            }
+        };
+
+        try (EventStore eventStore = new EventStore(new IncrementingClock(Instant.now()), FsyncPolicy.everyWrite())) {
+            eventStore.project("blocking", blocking);
+            LongAdder written = eventStore.metrics().counter("eventstore_stored_events_total", "");
+            Future<?> first = executor.submit(() -> eventStore.store("name.lemerdy.sebastian.typeA", "data"));
+            publishing.await();
+            Future<?> second = executor.submit(() -> eventStore.store("name.lemerdy.sebastian.typeB", "data"));
+            long deadline = System.nanoTime() + SECONDS.toNanos(10);
+            while (written.sum() < 2 && System.nanoTime() < deadline) {
+                Thread.yield();
+            }
+            long writtenWhilePublishing = written.sum();
+            published.countDown();
+            first.get();
+            second.get();
+
+            assertThat(writtenWhilePublishing).isEqualTo(2);
+            assertThat(eventStore.events()).extracting(event -> event.type)
+                    .containsExactly("name.lemerdy.sebastian.typeA", "name.lemerdy.sebastian.typeB");
+        }
+    }
+
+    /**
+     * Only the first projection of a store is registered while publishers skip projecting altogether, hence a new
+     * store for each round.
+     */
+    @Test
+    public void should_fold_every_event_into_projections_registered_while_writing() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> tasks = new ArrayList<>();
+
+            try (EventStore eventStore = new EventStore(new IncrementingClock(Instant.now()), FsyncPolicy.groupCommit())) {
+                long stored = eventStore.events().size();
+                for (int writer = 0; writer < WRITERS; writer++) {
+                    String type = "name.lemerdy.sebastian.type" + writer;
+                    tasks.add(executor.submit((Callable<Void>) () -> {
+                        start.await();
+                        for (int i = 0; i < EVENTS_PER_WRITER / 10; i++) {
+                            eventStore.store(type, Integer.toString(i));
+                        }
+                        return null;
+                    }));
+                }
+
+                start.countDown();
+                while (eventStore.events().size() == stored) {
+                    Thread.yield();
+                }
+                Supplier<Long> count = eventStore.project("count" + round, Projection.count());
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+
+                assertThat(count.get()).as("round %d", round).isEqualTo(eventStore.events().size());
+            }
+        }
+    }
+
+    /**
+     * Each writer stores its events in order: any read must see, for every writer, a gap-free prefix of them, in
+     * chronological order.
+     */
+    private static void assertConsistent(List<Event> events) {
+        Map<String, Integer> nextByType = new HashMap<>();
+        Instant previousDate = Instant.MIN;
+        for (Event event : events) {
+            int expected = nextByType.getOrDefault(event.type, 0);
+            assertThat(Integer.parseInt(event.data)).as("next event of %s", event.type).isEqualTo(expected);
+            assertThat(event.date).isGreaterThanOrEqualTo(previousDate);
+            nextByType.put(event.type, expected + 1);
+            previousDate = event.date;
+        }
+    }
+
+}
@@ -12,13 +12,22 @@ import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 import org.simpleframework.http.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
 
@@ -49,6 +58,7 @@ public class EventStoreHttpTest {
 
     @Before
     public void initializeEventStore() {
+        previousPassword = Optional.ofNullable(System.setProperty("password", "password"));
         now = Instant.now();
         eventStore = new EventStore(new IncrementingClock(now));
         eventStoreHttp = new EventStoreHttp(eventStore);
@@ -60,9 +70,9 @@ public class EventStoreHttpTest {
         when(req.getPath()).thenReturn(path);
     }
 
-    @Before
-    public void setPassword() {
-        previousPassword = Optional.ofNullable(System.setProperty("password", "password"));
+    @After
+    public void closeServer() {
+        eventStoreHttp.close();
     }
 
     @After
@@ -92,6 +102,116 @@ public class EventStoreHttpTest {
         verifyRespIsClosed();
     }
 
+    @Test
+    public void should_reject_event_stored_with_a_stale_version() throws IOException {
+        eventStore.store("name.lemerdy.sebastian.typeA", "data0");
+        when(path.getPath()).thenReturn("/events/name.lemerdy.sebastian.typeA");
+        when(path.getSegments()).thenReturn(new String[]{"events", "name.lemerdy.sebastian.typeA"});
+        when(req.getMethod()).thenReturn(Method.POST);
+        when(req.getContent()).thenReturn("this is my data");
+        when(req.getParameter(EventStoreHttp.EXPECTED_VERSION)).thenReturn("0");
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setStatus(Status.CONFLICT);
+        verify(resp).setValue(EventStoreHttp.STREAM_VERSION, "1");
+        assertThat(eventStore.events()).hasSize(1);
+
+        when(req.getParameter(EventStoreHttp.EXPECTED_VERSION)).thenReturn("1");
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setStatus(Status.CREATED);
+        verify(resp).setValue(EventStoreHttp.STREAM_VERSION, "2");
+    }
+
+    @Test
+    public void should_store_a_batch_of_events() throws IOException {
+        when(path.getPath()).thenReturn("/events");
+        when(path.getSegments()).thenReturn(new String[]{"events"});
+        when(req.getMethod()).thenReturn(Method.POST);
+        when(req.getContent()).thenReturn("[\n" +
+                "  {\"type\": \"name.lemerdy.sebastian.typeA\", \"data\": \"{\\\"id\\\": 1}\"},\n" +
+                "  {\"type\": \"name.lemerdy.sebastian.typeB\", \"data\": \"line\\nbreak\"}\n" +
+                "]");
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setStatus(Status.CREATED);
+        assertThat(eventStore.events()).containsExactly(
+                new Event(now, "name.lemerdy.sebastian.typeA", "{\"id\": 1}"),
+                new Event(now, "name.lemerdy.sebastian.typeB", "line\nbreak"));
+        verifyRespIsClosed();
+    }
+
+    @Test
+    public void should_decode_unicode_escapes_of_a_batch() throws IOException {
+        when(path.getPath()).thenReturn("/events");
+        when(path.getSegments()).thenReturn(new String[]{"events"});
+        when(req.getMethod()).thenReturn(Method.POST);
+        when(req.getContent()).thenReturn("[" +
+                "{\"type\": \"name.lemerdy.sebastian.typ\\u00e9A\", \"data\": \"caf\\u00E9 \\ud83d\\ude00 \\u0001\"}" +
+                "]");
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setStatus(Status.CREATED);
+        assertThat(eventStore.events()).containsExactly(new Event(now, "name.lemerdy.sebastian.typ\u00e9A", "caf\u00e9 \uD83D\uDE00 \u0001"));
+
+        when(req.getMethod()).thenReturn(Method.GET);
+        ByteArrayOutputStream respContent = mockRespContent();
+
+        eventStoreHttp.handle(req, resp);
+
+        assertThat(new String(respContent.toByteArray(), UTF_8)).contains("\"data\": \"caf\u00e9 \uD83D\uDE00 \\u0001\"");
+    }
+
+    @Test
+    public void should_reject_malformed_batch() throws IOException {
+        when(path.getPath()).thenReturn("/events");
+        when(path.getSegments()).thenReturn(new String[]{"events"});
+        when(req.getMethod()).thenReturn(Method.POST);
+        when(req.getContent()).thenReturn("[{\"type\": \"name.lemerdy.sebastian.typeA\"}");
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setStatus(Status.BAD_REQUEST);
+        assertThat(eventStore.events()).isEmpty();
+        verifyRespIsClosed();
+    }
+
+    @Test
+    public void should_reject_a_batch_with_whitespace_or_digits_outside_ascii() throws IOException {
+        when(path.getPath()).thenReturn("/events");
+        when(path.getSegments()).thenReturn(new String[]{"events"});
+        when(req.getMethod()).thenReturn(Method.POST);
+        when(req.getContent())
+                .thenReturn("[\u2003{\"type\": \"name.lemerdy.sebastian.typeA\", \"data\": \"data\"}]")
+                .thenReturn("[{\"type\": \"name.lemerdy.sebastian.typeA\",\u000b\"data\": \"data\"}]")
+                .thenReturn("[{\"type\": \"name.lemerdy.sebastian.typeA\", \"data\": \"\\u00\u0664\u0661\"}]");
+
+        eventStoreHttp.handle(req, resp);
+        eventStoreHttp.handle(req, resp);
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp, times(3)).setStatus(Status.BAD_REQUEST);
+        assertThat(eventStore.events()).isEmpty();
+    }
+
+    @Test
+    public void should_reject_a_batch_with_unescaped_control_characters() throws IOException {
+        when(path.getPath()).thenReturn("/events");
+        when(path.getSegments()).thenReturn(new String[]{"events"});
+        when(req.getMethod()).thenReturn(Method.POST);
+        when(req.getContent()).thenReturn("[{\"type\": \"name.lemerdy.sebastian.typeA\", \"data\": \"line\nbreak\"}]");
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setStatus(Status.BAD_REQUEST);
+        assertThat(eventStore.events()).isEmpty();
+        verifyRespIsClosed();
+    }
+
     @Test
     public void should_retrieve_all_events() {
         eventStore
@@ -100,13 +220,11 @@ public class EventStoreHttpTest {
                 .store("name.lemerdy.sebastian.typeB", "data2");
         when(path.getPath()).thenReturn("/events");
         when(path.getSegments()).thenReturn(new String[]{"events"});
-        PrintStream respContent = mockRespContent();
+        ByteArrayOutputStream respContent = mockRespContent();
 
         eventStoreHttp.handle(req, resp);
 
-        ArgumentCaptor<String> responseContent = ArgumentCaptor.forClass(String.class);
-        verify(respContent).print(responseContent.capture());
-        assertThat(responseContent.getValue()).isEqualTo("" +
+        assertThat(new String(respContent.toByteArray(), UTF_8)).isEqualTo("" +
                 "[\n" +
                 "  {\n" +
                 "    \"date\": \"" + now.plusSeconds(0) + "\",\n" +
@@ -127,6 +245,109 @@ public class EventStoreHttpTest {
         verifyRespIsClosed();
     }
 
+    @Test
+    public void should_negotiate_compact_json_and_ndjson() throws IOException {
+        eventStore
+                .store("name.lemerdy.sebastian.typeA", "data0")
+                .store("name.lemerdy.sebastian.typeB", "data\n1");
+        when(path.getPath()).thenReturn("/events");
+        when(path.getSegments()).thenReturn(new String[]{"events"});
+        when(req.getValue(Protocol.ACCEPT)).thenReturn("application/json");
+        ByteArrayOutputStream respContent = mockRespContent();
+
+        eventStoreHttp.handle(req, resp);
+
+        assertThat(new String(respContent.toByteArray(), UTF_8)).startsWith("[\n  {\n    \"date\": \"" + now + "\",\n");
+
+        when(req.getParameter(EventStoreHttp.COMPACT)).thenReturn("true");
+        respContent = mockRespContent();
+
+        eventStoreHttp.handle(req, resp);
+
+        assertThat(new String(respContent.toByteArray(), UTF_8)).isEqualTo("[" +
+                "{\"date\":\"" + now + "\",\"type\":\"name.lemerdy.sebastian.typeA\",\"data\":\"data0\"}," +
+                "{\"date\":\"" + now.plusSeconds(1) + "\",\"type\":\"name.lemerdy.sebastian.typeB\",\"data\":\"data\\n1\"}" +
+                "]");
+
+        when(req.getValue(Protocol.ACCEPT)).thenReturn("application/json;q=0.5, application/x-ndjson");
+        respContent = mockRespContent();
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setContentType(EventStoreHttp.NDJSON);
+        assertThat(new String(respContent.toByteArray(), UTF_8)).isEqualTo("" +
+                "{\"date\":\"" + now + "\",\"type\":\"name.lemerdy.sebastian.typeA\",\"data\":\"data0\"}\n" +
+                "{\"date\":\"" + now.plusSeconds(1) + "\",\"type\":\"name.lemerdy.sebastian.typeB\",\"data\":\"data\\n1\"}\n");
+
+        when(req.getValue(Protocol.ACCEPT)).thenReturn("application/x-ndjson;q=0, */*");
+        respContent = mockRespContent();
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp, times(3)).setContentType(EventStoreHttp.JSON);
+        assertThat(new String(respContent.toByteArray(), UTF_8)).startsWith("[{\"date\":");
+    }
+
+    @Test
+    public void should_gzip_events_when_accepted() throws IOException {
+        IntStream.range(0, 1000).forEach(i -> eventStore.store("name.lemerdy.sebastian.typeA", "{\"id\": " + i + "}"));
+        when(path.getPath()).thenReturn("/events");
+        when(path.getSegments()).thenReturn(new String[]{"events"});
+        ByteArrayOutputStream plain = mockRespContent();
+        eventStoreHttp.handle(req, resp);
+        when(req.getValue(Protocol.ACCEPT_ENCODING)).thenReturn("deflate, gzip;q=0.8");
+        ByteArrayOutputStream gzipped = mockRespContent();
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setValue(Protocol.CONTENT_ENCODING, EventStoreHttp.GZIP);
+        assertThat(gzipped.size()).isLessThan(plain.size() / 5);
+        ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.toByteArray()))) {
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                inflated.write(buffer, 0, read);
+            }
+        }
+        assertThat(inflated.toByteArray()).isEqualTo(plain.toByteArray());
+
+        when(req.getValue(Protocol.ACCEPT_ENCODING)).thenReturn("gzip;q=0");
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setValue(Protocol.CONTENT_ENCODING, EventStoreHttp.GZIP);
+    }
+
+    @Test
+    public void should_not_send_events_again_until_one_of_the_queried_type_is_stored() {
+        eventStore
+                .store("name.lemerdy.sebastian.typeA", "data0")
+                .store("name.lemerdy.sebastian.typeB", "data1");
+        when(path.getPath()).thenReturn("/events/name.lemerdy.sebastian.typeA");
+        when(path.getSegments()).thenReturn(new String[]{"events", "name.lemerdy.sebastian.typeA"});
+        mockRespContent();
+        eventStoreHttp.handle(req, resp);
+        ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+        verify(resp).setValue(eq(Protocol.ETAG), etag.capture());
+        eventStore.store("name.lemerdy.sebastian.typeB", "data2");
+        when(req.getValue(Protocol.IF_NONE_MATCH)).thenReturn("\"other\", " + etag.getValue());
+        ByteArrayOutputStream notModified = mockRespContent();
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setStatus(Status.NOT_MODIFIED);
+        verify(resp, times(2)).setValue(Protocol.ETAG, etag.getValue());
+        assertThat(notModified.size()).isZero();
+
+        eventStore.store("name.lemerdy.sebastian.typeA", "data3");
+        ByteArrayOutputStream modified = mockRespContent();
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setStatus(Status.NOT_MODIFIED);
+        verify(resp, times(2)).setValue(Protocol.ETAG, etag.getValue());
+        assertThat(new String(modified.toByteArray(), UTF_8)).contains("data0", "data3");
+    }
+
     @Test
     public void should_retrieve_all_events_for_a_given_type() {
         eventStore
@@ -135,13 +356,11 @@ public class EventStoreHttpTest {
                 .store("name.lemerdy.sebastian.typeA", "data2");
         when(path.getPath()).thenReturn("/events/name.lemerdy.sebastian.typeA");
         when(path.getSegments()).thenReturn(new String[]{"events", "name.lemerdy.sebastian.typeA"});
-        PrintStream respContent = mockRespContent();
+        ByteArrayOutputStream respContent = mockRespContent();
 
         eventStoreHttp.handle(req, resp);
 
-        ArgumentCaptor<String> responseContent = ArgumentCaptor.forClass(String.class);
-        verify(respContent).print(responseContent.capture());
-        assertThat(responseContent.getValue()).isEqualTo("" +
+        assertThat(new String(respContent.toByteArray(), UTF_8)).isEqualTo("" +
                 "[\n" +
                 "  {\n" +
                 "    \"date\": \"" + now.plusSeconds(0) + "\",\n" +
@@ -165,13 +384,11 @@ public class EventStoreHttpTest {
                 .store("name.lemerdy.sebastian.type", "data2");
         when(path.getPath()).thenReturn("/events/" + now.plusSeconds(1));
         when(path.getSegments()).thenReturn(new String[]{"events", now.plusSeconds(1).toString()});
-        PrintStream respContent = mockRespContent();
+        ByteArrayOutputStream respContent = mockRespContent();
 
         eventStoreHttp.handle(req, resp);
 
-        ArgumentCaptor<String> responseContent = ArgumentCaptor.forClass(String.class);
-        verify(respContent).print(responseContent.capture());
-        assertThat(responseContent.getValue()).isEqualTo("" +
+        assertThat(new String(respContent.toByteArray(), UTF_8)).isEqualTo("" +
                 "[\n" +
                 "  {\n" +
                 "    \"date\": \"" + now.plusSeconds(1) + "\",\n" +
@@ -187,6 +404,146 @@ public class EventStoreHttpTest {
         verifyRespIsClosed();
     }
 
+    @Test
+    public void should_retrieve_events_of_a_time_range() {
+        eventStore
+                .store("name.lemerdy.sebastian.type", "data0")
+                .store("name.lemerdy.sebastian.type", "data1")
+                .store("name.lemerdy.sebastian.type", "data2");
+        when(path.getPath()).thenReturn("/events");
+        when(path.getSegments()).thenReturn(new String[]{"events"});
+        when(req.getParameter(EventStoreHttp.FROM)).thenReturn(now.plusSeconds(1).toString());
+        when(req.getParameter(EventStoreHttp.TO)).thenReturn(now.plusSeconds(2).toString());
+        ByteArrayOutputStream respContent = mockRespContent();
+
+        eventStoreHttp.handle(req, resp);
+
+        assertThat(new String(respContent.toByteArray(), UTF_8)).isEqualTo("" +
+                "[\n" +
+                "  {\n" +
+                "    \"date\": \"" + now.plusSeconds(1) + "\",\n" +
+                "    \"type\": \"name.lemerdy.sebastian.type\",\n" +
+                "    \"data\": \"data1\"\n" +
+                "  }\n" +
+                "]");
+        verifyRespIsClosed();
+    }
+
+    @Test
+    public void should_reject_invalid_time_range() {
+        when(path.getPath()).thenReturn("/events");
+        when(path.getSegments()).thenReturn(new String[]{"events"});
+        when(req.getParameter(EventStoreHttp.FROM)).thenReturn("yesterday");
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setStatus(Status.BAD_REQUEST);
+        verifyRespIsClosed();
+    }
+
+    @Test
+    public void should_page_through_events_with_a_cursor() {
+        eventStore
+                .store("name.lemerdy.sebastian.type", "data0")
+                .store("name.lemerdy.sebastian.type", "data1")
+                .store("name.lemerdy.sebastian.type", "data2");
+        when(path.getPath()).thenReturn("/events");
+        when(path.getSegments()).thenReturn(new String[]{"events"});
+        when(req.getParameter(EventStoreHttp.LIMIT)).thenReturn("2");
+        ByteArrayOutputStream firstPage = mockRespContent();
+
+        eventStoreHttp.handle(req, resp);
+
+        ArgumentCaptor<String> cursor = ArgumentCaptor.forClass(String.class);
+        verify(resp).setValue(eq(EventStoreHttp.NEXT_CURSOR), cursor.capture());
+        assertThat(new String(firstPage.toByteArray(), UTF_8))
+                .contains("data0", "data1")
+                .doesNotContain("data2");
+
+        when(req.getParameter(EventStoreHttp.AFTER)).thenReturn(cursor.getValue());
+        ByteArrayOutputStream secondPage = mockRespContent();
+
+        eventStoreHttp.handle(req, resp);
+
+        assertThat(new String(secondPage.toByteArray(), UTF_8)).isEqualTo("" +
+                "[\n" +
+                "  {\n" +
+                "    \"date\": \"" + now.plusSeconds(2) + "\",\n" +
+                "    \"type\": \"name.lemerdy.sebastian.type\",\n" +
+                "    \"data\": \"data2\"\n" +
+                "  }\n" +
+                "]");
+    }
+
+    @Test
+    public void should_reject_invalid_cursor() {
+        when(path.getPath()).thenReturn("/events");
+        when(path.getSegments()).thenReturn(new String[]{"events"});
+        when(req.getParameter(EventStoreHttp.AFTER)).thenReturn("not-a-cursor");
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setStatus(Status.BAD_REQUEST);
+        verifyRespIsClosed();
+    }
+
+    @Test
+    public void should_push_new_events_to_subscribers() throws InterruptedException, IOException {
+        eventStore.store("name.lemerdy.sebastian.type", "data0");
+        when(path.getPath()).thenReturn("/events");
+        when(path.getSegments()).thenReturn(new String[]{"events"});
+        when(req.getValue(Protocol.ACCEPT)).thenReturn(EventStoreHttp.EVENT_STREAM);
+        ByteArrayOutputStream respContent = mockFlushedRespContent();
+
+        eventStoreHttp.handle(req, resp);
+        eventStore.store("name.lemerdy.sebastian.type", "data1");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!new String(respContent.toByteArray(), UTF_8).contains("data1") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(new String(respContent.toByteArray(), UTF_8)).contains(
+                "data: {\"date\": \"" + now + "\", \"type\": \"name.lemerdy.sebastian.type\", \"data\": \"data0\"}\n\n",
+                "data: {\"date\": \"" + now.plusSeconds(1) + "\", \"type\": \"name.lemerdy.sebastian.type\", \"data\": \"data1\"}\n\n");
+        verify(resp).setContentType(EventStoreHttp.EVENT_STREAM);
+        eventStore.close();
+        verify(resp, timeout(5000)).close();
+    }
+
+    @Test
+    public void should_write_events_in_bounded_chunks() throws IOException {
+        for (int i = 0; i < 2000; i++) {
+            eventStore.store("name.lemerdy.sebastian.type", "data" + i);
+        }
+        when(path.getPath()).thenReturn("/events");
+        when(path.getSegments()).thenReturn(new String[]{"events"});
+        List<Integer> writes = new ArrayList<>();
+        when(resp.getByteChannel()).thenReturn(new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                int written = src.remaining();
+                writes.add(written);
+                src.position(src.limit());
+                return written;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        eventStoreHttp.handle(req, resp);
+
+        assertThat(writes.size()).isGreaterThan(10);
+        assertThat(writes).allMatch(written -> written <= 8 * 1024);
+        verifyRespIsClosed();
+    }
+
     @Test
     public void should_not_authorize_unauthenticated_request() {
         when(req.getValue(Protocol.AUTHORIZATION)).thenReturn(null);
@@ -207,6 +564,95 @@ public class EventStoreHttpTest {
         verifyRespIsClosed();
     }
 
+    @Test
+    public void should_authorize_users_with_hashed_passwords() {
+        System.setProperty(Authorizer.USERS_SYSTEM_PROPERTY_KEY, "alice=" + PasswordHash.of("secret:with:colons").encode());
+        try {
+            eventStoreHttp = new EventStoreHttp(eventStore);
+        } finally {
+            System.clearProperty(Authorizer.USERS_SYSTEM_PROPERTY_KEY);
+        }
+        when(path.getPath()).thenReturn("/events");
+        when(path.getSegments()).thenReturn(new String[]{"events"});
+        when(req.getValue(Protocol.AUTHORIZATION)).thenReturn("Basic " + Base64.getMimeEncoder().encodeToString("alice:secret:with:colons".getBytes()));
+        mockRespContent();
+
+        eventStoreHttp.handle(req, resp);
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp, never()).setStatus(Status.UNAUTHORIZED);
+
+        when(req.getValue(Protocol.AUTHORIZATION)).thenReturn("Basic " + Base64.getMimeEncoder().encodeToString("alice:secret".getBytes()));
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setStatus(Status.UNAUTHORIZED);
+    }
+
+    @Test
+    public void should_be_unavailable_when_too_many_requests_are_served() {
+        eventStoreHttp = new EventStoreHttp(eventStore, ServerOptions.defaults().withMaxConcurrentRequests(0));
+        when(path.getPath()).thenReturn("/events");
+        when(path.getSegments()).thenReturn(new String[]{"events"});
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setStatus(Status.SERVICE_UNAVAILABLE);
+        verifyRespIsClosed();
+    }
+
+    @Test
+    public void should_expose_metrics() throws IOException {
+        when(path.getPath()).thenReturn("/events/name.lemerdy.sebastian.typeA");
+        when(path.getSegments()).thenReturn(new String[]{"events", "name.lemerdy.sebastian.typeA"});
+        when(req.getMethod()).thenReturn(Method.POST);
+        when(req.getContent()).thenReturn("data");
+        when(resp.getCode()).thenReturn(201);
+        eventStoreHttp.handle(req, resp);
+        when(req.getValue(Protocol.AUTHORIZATION)).thenReturn(null);
+        when(resp.getCode()).thenReturn(401);
+        eventStoreHttp.handle(req, resp);
+        when(req.getValue(Protocol.AUTHORIZATION)).thenReturn("Basic " + Base64.getMimeEncoder().encodeToString("user:password".getBytes()));
+        when(path.getPath()).thenReturn(EventStoreHttp.METRICS);
+        when(req.getMethod()).thenReturn(Method.GET);
+        ByteArrayOutputStream respContent = mockRespContent();
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setContentType(EventStoreHttp.METRICS_CONTENT_TYPE);
+        assertThat(respContent.toString("UTF-8"))
+                .contains("# TYPE eventstore_append_seconds summary\n")
+                .contains("eventstore_append_seconds_count 1\n")
+                .contains("eventstore_stored_events_total 1\n")
+                .contains("eventstore_http_requests_total{code=\"201\"} 1\n")
+                .contains("eventstore_http_requests_total{code=\"401\"} 1\n")
+                .contains("eventstore_http_authorization_failures_total 1\n")
+                .contains("# TYPE eventstore_startup_seconds gauge\n");
+    }
+
+    @Test
+    public void should_serve_projections() throws IOException {
+        eventStore.store("name.lemerdy.sebastian.typeA", "data_0");
+        eventStore.project("countOfA", "name.lemerdy.sebastian.typeA", Projection.count());
+        eventStore.store("name.lemerdy.sebastian.typeB", "data_1");
+        eventStore.store("name.lemerdy.sebastian.typeA", "data_2");
+        when(path.getPath()).thenReturn("/projections/countOfA");
+        when(path.getSegments()).thenReturn(new String[]{"projections", "countOfA"});
+        ByteArrayOutputStream respContent = mockRespContent();
+
+        eventStoreHttp.handle(req, resp);
+
+        assertThat(respContent.toString("UTF-8")).isEqualTo("2");
+        verify(resp).setValue(EventStoreHttp.NEXT_CURSOR, eventStore.lastPosition().toCursor());
+
+        when(path.getPath()).thenReturn("/projections/unknown");
+        when(path.getSegments()).thenReturn(new String[]{"projections", "unknown"});
+
+        eventStoreHttp.handle(req, resp);
+
+        verify(resp).setStatus(Status.NOT_FOUND);
+    }
+
     @Test
     public void should_not_found_if_query_is_unknown() {
         when(path.getPath()).thenReturn("/not-found");
@@ -225,10 +671,33 @@ public class EventStoreHttpTest {
         }
     }
 
-    private PrintStream mockRespContent() {
-        PrintStream respContent = mock(PrintStream.class);
+    /**
+     * Like the response of the server, which keeps what is written until its buffer fills up: only what is flushed
+     * before the response is closed is sent, and nothing written to its byte channel is.
+     */
+    private ByteArrayOutputStream mockFlushedRespContent() {
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        ByteArrayOutputStream buffered = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void flush() {
+                sent.write(buf, 0, count);
+                reset();
+            }
+        };
+        try {
+            when(resp.getByteChannel()).thenReturn(Channels.newChannel(new ByteArrayOutputStream()));
+            when(resp.getOutputStream()).thenReturn(buffered);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sent;
+    }
+
+    private ByteArrayOutputStream mockRespContent() {
+        ByteArrayOutputStream respContent = new ByteArrayOutputStream();
         try {
-            when(resp.getPrintStream()).thenReturn(respContent);
+            when(resp.getByteChannel()).thenReturn(Channels.newChannel(respContent));
+            when(resp.getOutputStream()).thenReturn(respContent);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
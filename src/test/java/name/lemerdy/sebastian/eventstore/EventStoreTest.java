@@ -5,12 +5,34 @@ import name.lemerdy.sebastian.eventstore.testtools.IncrementingClock;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Clock;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 
 import static java.time.Instant.now;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class EventStoreTest {
 
@@ -58,6 +80,22 @@ public class EventStoreTest {
                 .hasSize(2);
     }
 
+    @Test
+    public void should_retrieve_events_of_a_given_type_in_chronological_order_after_replay() {
+        Instant now = now();
+        new EventStore(new IncrementingClock(now))
+                .store("name.lemerdy.sebastian.typeA", "data_0")
+                .store("name.lemerdy.sebastian.typeB", "data_1")
+                .store("name.lemerdy.sebastian.typeA", "data_2");
+
+        EventStore eventStore = new EventStore(Clock.systemUTC());
+
+        assertThat(eventStore.events("name.lemerdy.sebastian.typeA")).containsExactly(
+                new Event(now.plusSeconds(0), "name.lemerdy.sebastian.typeA", "data_0"),
+                new Event(now.plusSeconds(2), "name.lemerdy.sebastian.typeA", "data_2"));
+        assertThat(eventStore.events("name.lemerdy.sebastian.unknown")).isEmpty();
+    }
+
     @Test
     public void should_retrieve_all_events_starting_from_some_instant() {
         Instant now = now();
@@ -73,6 +111,50 @@ public class EventStoreTest {
                 new Event(now.plusSeconds(2), "name.lemerdy.sebastian.type", "data_2"));
     }
 
+    @Test
+    public void should_retrieve_events_of_a_time_range() {
+        Instant now = now();
+        EventStore eventStore = new EventStore(new IncrementingClock(now));
+        IntStream.range(0, 5).forEach(i -> eventStore.store("name.lemerdy.sebastian.type", "data_" + i));
+
+        assertThat(eventStore.events(now.plusSeconds(1), now.plusSeconds(3))).containsExactly(
+                new Event(now.plusSeconds(1), "name.lemerdy.sebastian.type", "data_1"),
+                new Event(now.plusSeconds(2), "name.lemerdy.sebastian.type", "data_2"));
+        assertThat(eventStore.events(now.plusMillis(3500), now.plusSeconds(10))).containsExactly(
+                new Event(now.plusSeconds(4), "name.lemerdy.sebastian.type", "data_4"));
+        assertThat(eventStore.events(now.plusSeconds(3), now.plusSeconds(1))).isEmpty();
+    }
+
+    @Test
+    public void should_version_each_stream() {
+        Instant now = now();
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now))) {
+            eventStore
+                    .store("name.lemerdy.sebastian.typeA", "data_0", 0)
+                    .store("name.lemerdy.sebastian.typeB", "data_1", 0)
+                    .store("name.lemerdy.sebastian.typeA", "data_2", 1);
+
+            assertThat(eventStore.version("name.lemerdy.sebastian.typeA")).isEqualTo(2);
+            assertThat(eventStore.version("name.lemerdy.sebastian.typeB")).isEqualTo(1);
+            assertThat(eventStore.version("name.lemerdy.sebastian.unknown")).isEqualTo(0);
+        }
+
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now))) {
+            assertThat(eventStore.version("name.lemerdy.sebastian.typeA")).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void should_reject_event_stored_with_a_stale_version() {
+        Instant now = now();
+        EventStore eventStore = new EventStore(new IncrementingClock(now))
+                .store("name.lemerdy.sebastian.type", "data_0");
+
+        assertThatThrownBy(() -> eventStore.store("name.lemerdy.sebastian.type", "data_1", 0))
+                .isInstanceOf(WrongExpectedVersionException.class);
+        assertThat(eventStore.events()).containsExactly(new Event(now, "name.lemerdy.sebastian.type", "data_0"));
+    }
+
     @Test
     public void should_persist_all_events_to_disk() {
         Instant now = now();
@@ -103,7 +185,7 @@ public class EventStoreTest {
 
 
     @Test
-    public void should_modify_persisted_data_in_case_of_double_backslash_and_n() {
+    public void should_persist_data_with_backslash_and_n_unchanged() {
         Instant now = now();
         EventStore eventStore = new EventStore(new IncrementingClock(now))
                 .store("name.lemerdy.sebastian.type", "data_0\\nnew line");
@@ -111,7 +193,459 @@ public class EventStoreTest {
         eventStore.persist();
 
         assertThat(new EventStore(Clock.systemUTC()).events()).containsExactly(
-                new Event(now.plusSeconds(0), "name.lemerdy.sebastian.type", "data_0\nnew line"));
+                new Event(now.plusSeconds(0), "name.lemerdy.sebastian.type", "data_0\\nnew line"));
+    }
+
+    @Test
+    public void should_persist_any_unicode_data_unchanged() {
+        Instant now = now();
+        String data = "{\"name\": \"\u00e9v\u00e9nement \ud83d\udcc5\", \"separators\": \",\r\n\t\u0000\"}";
+        new EventStore(new IncrementingClock(now)).store("name.lemerdy.sebastian.type", data);
+
+        assertThat(new EventStore(Clock.systemUTC()).events()).containsExactly(
+                new Event(now, "name.lemerdy.sebastian.type", data));
+    }
+
+    @Test
+    public void should_replay_appended_events_without_persisting() {
+        Instant now = now();
+        new EventStore(new IncrementingClock(now))
+                .store("name.lemerdy.sebastian.type", "data_0")
+                .store("name.lemerdy.sebastian.type", "data_1");
+
+        assertThat(new EventStore(Clock.systemUTC()).events()).containsExactly(
+                new Event(now.plusSeconds(0), "name.lemerdy.sebastian.type", "data_0"),
+                new Event(now.plusSeconds(1), "name.lemerdy.sebastian.type", "data_1"));
+    }
+
+    @Test
+    public void should_append_after_replayed_events() {
+        Instant now = now();
+        IncrementingClock clock = new IncrementingClock(now);
+        new EventStore(clock).store("name.lemerdy.sebastian.type", "data_0");
+        new EventStore(clock).store("name.lemerdy.sebastian.type", "data_1");
+
+        assertThat(new EventStore(Clock.systemUTC()).events()).containsExactly(
+                new Event(now.plusSeconds(0), "name.lemerdy.sebastian.type", "data_0"),
+                new Event(now.plusSeconds(1), "name.lemerdy.sebastian.type", "data_1"));
+    }
+
+    @Test
+    public void should_drop_torn_last_record() throws IOException {
+        Instant now = now();
+        new EventStore(new IncrementingClock(now)).store("name.lemerdy.sebastian.type", "data_0");
+        Files.write(Paths.get(".eventstore", "00000000000000000000.segment"), new byte[]{0, 0, 0, 42, 17, 3, 5}, APPEND);
+
+        EventStore eventStore = new EventStore(new IncrementingClock(now.plusSeconds(1)))
+                .store("name.lemerdy.sebastian.type", "data_1");
+
+        assertThat(eventStore.events()).containsExactly(
+                new Event(now.plusSeconds(0), "name.lemerdy.sebastian.type", "data_0"),
+                new Event(now.plusSeconds(1), "name.lemerdy.sebastian.type", "data_1"));
+        assertThat(new EventStore(Clock.systemUTC()).events()).isEqualTo(eventStore.events());
+    }
+
+    @Test
+    public void should_drop_a_last_segment_left_empty_by_a_crash_at_its_creation() throws IOException {
+        should_drop_a_last_segment_torn_at_its_creation(new byte[0]);
+    }
+
+    @Test
+    public void should_drop_a_last_segment_whose_header_was_not_written_before_a_crash() throws IOException {
+        should_drop_a_last_segment_torn_at_its_creation(new byte[Segment.HEADER_SIZE]);
+    }
+
+    private void should_drop_a_last_segment_torn_at_its_creation(byte[] content) throws IOException {
+        Instant now = now();
+        StoreOptions options = StoreOptions.defaults().withSegmentSize(256).withSnapshotEvery(0);
+        String data = Stream.generate(() -> "x").limit(100).collect(joining());
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now), options)) {
+            eventStore.store("name.lemerdy.sebastian.type", data + 0)
+                    .store("name.lemerdy.sebastian.type", data + 1)
+                    .store("name.lemerdy.sebastian.type", data + 2);
+        }
+        Files.write(Paths.get(".eventstore", "00000000000000000002.segment"), content);
+
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now.plusSeconds(60)), options)) {
+            assertThat(eventStore.events()).extracting(Event::getData).containsExactly(data + 0, data + 1);
+            eventStore.store("name.lemerdy.sebastian.type", data + 3);
+        }
+
+        try (EventStore eventStore = new EventStore(Clock.systemUTC(), options)) {
+            assertThat(eventStore.events()).extracting(Event::getData).containsExactly(data + 0, data + 1, data + 3);
+        }
+    }
+
+    @Test
+    public void should_replay_events_stored_with_periodic_fsync() {
+        Instant now = now();
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now), FsyncPolicy.everyMillis(10))) {
+            eventStore.store("name.lemerdy.sebastian.type", "data_0");
+        }
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now.plusSeconds(1)), FsyncPolicy.everyRecords(2))) {
+            eventStore.store("name.lemerdy.sebastian.type", "data_1");
+        }
+
+        assertThat(new EventStore(Clock.systemUTC()).events()).containsExactly(
+                new Event(now.plusSeconds(0), "name.lemerdy.sebastian.type", "data_0"),
+                new Event(now.plusSeconds(1), "name.lemerdy.sebastian.type", "data_1"));
+    }
+
+    @Test
+    public void should_make_concurrent_writes_durable_with_group_commit() throws Exception {
+        Instant now = now();
+        ExecutorService writers = newFixedThreadPool(8);
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now), FsyncPolicy.groupCommit(16))) {
+            List<Future<EventStore>> stores = IntStream.range(0, 200)
+                    .mapToObj(i -> writers.submit(() -> eventStore.store("name.lemerdy.sebastian.type", "data_" + i)))
+                    .collect(toList());
+            for (Future<EventStore> store : stores) {
+                store.get();
+            }
+        } finally {
+            writers.shutdown();
+        }
+
+        assertThat(new EventStore(Clock.systemUTC()).events())
+                .hasSize(200)
+                .extracting(Event::getData)
+                .containsOnlyElementsOf(IntStream.range(0, 200).mapToObj(i -> "data_" + i).collect(toList()));
+    }
+
+    @Test
+    public void should_roll_segments_and_replay_all_of_them() throws IOException {
+        Instant now = now();
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now), StoreOptions.defaults().withSegmentSize(256))) {
+            IntStream.range(0, 10).forEach(i -> eventStore.store("name.lemerdy.sebastian.type", "data_" + i));
+        }
+
+        try (Stream<Path> segments = Files.list(Paths.get(".eventstore"))) {
+            assertThat(segments.count()).isGreaterThan(1);
+        }
+        assertThat(new EventStore(Clock.systemUTC()).events())
+                .extracting(Event::getData)
+                .containsExactly(IntStream.range(0, 10).mapToObj(i -> "data_" + i).toArray(String[]::new));
+    }
+
+    @Test
+    public void should_store_a_batch_of_events_at_once() {
+        Instant now = now();
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now))) {
+            eventStore
+                    .store("name.lemerdy.sebastian.typeA", "data_0")
+                    .store(asList(
+                            new NewEvent("name.lemerdy.sebastian.typeA", "data_1"),
+                            new NewEvent("name.lemerdy.sebastian.typeB", "data_2")));
+
+            assertThat(eventStore.version("name.lemerdy.sebastian.typeA")).isEqualTo(2);
+            assertThat(eventStore.version("name.lemerdy.sebastian.typeB")).isEqualTo(1);
+        }
+
+        assertThat(new EventStore(Clock.systemUTC()).events()).containsExactly(
+                new Event(now, "name.lemerdy.sebastian.typeA", "data_0"),
+                new Event(now.plusSeconds(1), "name.lemerdy.sebastian.typeA", "data_1"),
+                new Event(now.plusSeconds(1), "name.lemerdy.sebastian.typeB", "data_2"));
+    }
+
+    @Test
+    public void should_drop_a_batch_partially_written_before_a_crash() throws IOException {
+        Instant now = now();
+        new EventStore(new IncrementingClock(now))
+                .store("name.lemerdy.sebastian.type", "data_0")
+                .store(asList(
+                        new NewEvent("name.lemerdy.sebastian.type", "data_1"),
+                        new NewEvent("name.lemerdy.sebastian.type", "data_2")))
+                .close();
+        Path segment = Paths.get(".eventstore", "00000000000000000000.segment");
+        byte[] content = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(content, content.length - "data_2".length() - 1));
+
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now.plusSeconds(2)))) {
+            assertThat(eventStore.events()).containsExactly(new Event(now, "name.lemerdy.sebastian.type", "data_0"));
+            eventStore.store("name.lemerdy.sebastian.type", "data_3");
+        }
+
+        assertThat(new EventStore(Clock.systemUTC()).events()).extracting(Event::getData).containsExactly("data_0", "data_3");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void should_refuse_to_load_a_corrupted_record() throws IOException {
+        new EventStore(new IncrementingClock(now()))
+                .store("name.lemerdy.sebastian.type", "data_0")
+                .store("name.lemerdy.sebastian.type", "data_1");
+        Path segment = Paths.get(".eventstore", "00000000000000000000.segment");
+        byte[] content = Files.readAllBytes(segment);
+        content[content.length / 2] ^= 1;
+        Files.write(segment, content);
+
+        new EventStore(Clock.systemUTC());
+    }
+
+    @Test
+    public void should_replay_events_decoded_concurrently_in_order() {
+        Instant now = now();
+        StoreOptions options = StoreOptions.defaults()
+                .withFsyncPolicy(FsyncPolicy.everyRecords(Integer.MAX_VALUE))
+                .withSegmentSize(1536 * 1024);
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now), options)) {
+            IntStream.range(0, 30_000).forEach(i -> eventStore.store("name.lemerdy.sebastian.type" + i % 7, String.format("data_%0100d", i)));
+        }
+
+        try (EventStore eventStore = new EventStore(Clock.systemUTC(), options)) {
+            assertThat(eventStore.events().stream().map(Event::getData).collect(toList()))
+                    .isEqualTo(IntStream.range(0, 30_000).mapToObj(i -> String.format("data_%0100d", i)).collect(toList()));
+            assertThat(eventStore.events("name.lemerdy.sebastian.type3")).hasSize(4286);
+        }
+    }
+
+    @Test
+    public void should_give_back_the_position_and_version_of_an_event_the_journal_failed_to_write() throws IOException {
+        should_give_back_the_position_and_version_of_an_event_the_journal_failed_to_write(FsyncPolicy.everyWrite());
+    }
+
+    @Test
+    public void should_give_back_the_position_and_version_of_an_event_group_commit_failed_to_write() throws IOException {
+        should_give_back_the_position_and_version_of_an_event_the_journal_failed_to_write(FsyncPolicy.groupCommit());
+    }
+
+    private void should_give_back_the_position_and_version_of_an_event_the_journal_failed_to_write(FsyncPolicy fsyncPolicy) throws IOException {
+        Instant now = now();
+        StoreOptions options = StoreOptions.defaults().withSegmentSize(256).withMemoryLimit(1).withSnapshotEvery(0).withFsyncPolicy(fsyncPolicy);
+        String data = Stream.generate(() -> "x").limit(100).collect(joining());
+        Path nextSegment = Paths.get(".eventstore", "00000000000000000001.segment");
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now), options)) {
+            eventStore.store("name.lemerdy.sebastian.type", data + 0);
+            Files.createDirectory(nextSegment);
+
+            assertThatThrownBy(() -> eventStore.store("name.lemerdy.sebastian.type", data + 1)).isInstanceOf(UncheckedIOException.class);
+            assertThat(eventStore.version("name.lemerdy.sebastian.type")).isEqualTo(1);
+            assertThatThrownBy(() -> eventStore.store("name.lemerdy.sebastian.type", data + 2)).isInstanceOf(IllegalStateException.class);
+            assertThat(eventStore.version("name.lemerdy.sebastian.type")).isEqualTo(1);
+        }
+        Files.delete(nextSegment);
+
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now.plusSeconds(60)), options)) {
+            eventStore.store("name.lemerdy.sebastian.type", data + 3);
+
+            assertThat(eventStore.version("name.lemerdy.sebastian.type")).isEqualTo(2);
+            assertThat(eventStore.events()).extracting(Event::getData).containsExactly(data + 0, data + 3);
+        }
+    }
+
+    @Test
+    public void should_read_back_payloads_that_do_not_fit_in_memory() {
+        Instant now = now();
+        StoreOptions options = StoreOptions.defaults().withSegmentSize(512).withMemoryLimit(2_000).withSnapshotEvery(0);
+        List<String> data = IntStream.range(0, 100).mapToObj(i -> "data_" + i).collect(toList());
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now), options)) {
+            data.forEach(payload -> eventStore.store("name.lemerdy.sebastian.type", payload));
+
+            PayloadCache cache = eventStore.payloadCache().get();
+            assertThat(eventStore.events(now.plusSeconds(99))).extracting(Event::getData).containsExactly("data_99");
+            assertThat(cache.hits()).isEqualTo(1);
+            assertThat(cache.misses()).isEqualTo(0);
+            assertThat(eventStore.events()).extracting(Event::getData).isEqualTo(data);
+            assertThat(cache.misses()).isGreaterThan(0);
+            assertThat(cache.bytes()).isLessThanOrEqualTo(2_000);
+            eventStore.snapshot();
+        }
+
+        try (EventStore eventStore = new EventStore(Clock.systemUTC(), options)) {
+            assertThat(eventStore.events("name.lemerdy.sebastian.type")).containsExactlyElementsOf(
+                    IntStream.range(0, 100).mapToObj(i -> new Event(now.plusSeconds(i), "name.lemerdy.sebastian.type", "data_" + i)).collect(toList()));
+            assertThat(eventStore.events(now.plusSeconds(98))).extracting(Event::getData).containsExactly("data_98", "data_99");
+        }
+    }
+
+    @Test
+    public void should_restore_snapshot_without_reading_the_segments_it_covers() throws IOException {
+        Instant now = now();
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now), StoreOptions.defaults().withSegmentSize(256))) {
+            IntStream.range(0, 10).forEach(i -> eventStore.store("name.lemerdy.sebastian.type", "data_" + i));
+            eventStore.snapshot();
+            IntStream.range(10, 15).forEach(i -> eventStore.store("name.lemerdy.sebastian.type", "data_" + i));
+        }
+        Path firstSegment = Paths.get(".eventstore", "00000000000000000000.segment");
+        byte[] content = Files.readAllBytes(firstSegment);
+        content[content.length - 1] ^= 1;
+        Files.write(firstSegment, content);
+
+        try (EventStore eventStore = new EventStore(Clock.systemUTC())) {
+            assertThat(eventStore.events())
+                    .extracting(Event::getData)
+                    .containsExactly(IntStream.range(0, 15).mapToObj(i -> "data_" + i).toArray(String[]::new));
+            assertThat(eventStore.events().get(14).date).isEqualTo(now.plusSeconds(14));
+        }
+    }
+
+    @Test
+    public void should_replay_the_whole_journal_when_the_snapshot_is_corrupted() throws IOException {
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now()))) {
+            eventStore
+                    .store("name.lemerdy.sebastian.type", "data_0")
+                    .store("name.lemerdy.sebastian.type", "data_1")
+                    .snapshot();
+            eventStore.store("name.lemerdy.sebastian.type", "data_2");
+        }
+        Path snapshot = Paths.get(".eventstore", "00000000000000000002.snapshot");
+        byte[] content = Files.readAllBytes(snapshot);
+        content[content.length / 2] ^= 1;
+        Files.write(snapshot, content);
+
+        assertThat(new EventStore(Clock.systemUTC()).events())
+                .extracting(Event::getData)
+                .containsExactly("data_0", "data_1", "data_2");
+    }
+
+    @Test
+    public void should_restore_events_dated_backwards_at_the_positions_a_replay_gives_them() throws IOException {
+        Instant now = now();
+        Files.write(Paths.get(".eventstore"), ("" +
+                now + ",name.lemerdy.sebastian.type,data_0\n" +
+                now.plusSeconds(2) + ",name.lemerdy.sebastian.type,data_1\n" +
+                now.plusSeconds(1) + ",name.lemerdy.sebastian.type,data_2\n").getBytes(UTF_8));
+        StoreOptions options = StoreOptions.defaults().withMemoryLimit(1).withSnapshotEvery(0);
+        List<Position> replayed;
+        try (EventStore eventStore = new EventStore(Clock.systemUTC(), options)) {
+            replayed = new ArrayList<>(eventStore.publishedEvents(eventStore.lastPosition()).keySet());
+            eventStore.snapshot();
+        }
+
+        try (EventStore eventStore = new EventStore(Clock.systemUTC(), options)) {
+            assertThat(eventStore.publishedEvents(eventStore.lastPosition()).keySet()).containsExactlyElementsOf(replayed);
+            assertThat(eventStore.events()).extracting(Event::getData).containsExactly("data_0", "data_2", "data_1");
+        }
+    }
+
+    @Test
+    public void should_take_snapshots_periodically_and_keep_the_latest() throws IOException {
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now()), StoreOptions.defaults().withSnapshotEvery(4))) {
+            IntStream.range(0, 10).forEach(i -> eventStore.store("name.lemerdy.sebastian.type", "data_" + i));
+        }
+
+        try (Stream<Path> files = Files.list(Paths.get(".eventstore"))) {
+            assertThat(files.map(file -> file.getFileName().toString()).filter(name -> name.endsWith(".snapshot")).collect(toList()))
+                    .hasSize(1);
+        }
+        assertThat(new EventStore(Clock.systemUTC()).events()).hasSize(10);
+    }
+
+    @Test
+    public void should_time_appends_and_queries() {
+        EventStore eventStore = new EventStore(new IncrementingClock(now()));
+        eventStore.store("name.lemerdy.sebastian.typeA", "data0");
+        eventStore.store(asList(new NewEvent("name.lemerdy.sebastian.typeA", "data1"), new NewEvent("name.lemerdy.sebastian.typeB", "data2")));
+
+        eventStore.events();
+        eventStore.events("name.lemerdy.sebastian.typeB");
+
+        Metrics metrics = eventStore.metrics();
+        assertThat(metrics.histogram("eventstore_append_seconds", "").count()).isEqualTo(2);
+        assertThat(metrics.counter("eventstore_stored_events_total", "").sum()).isEqualTo(3);
+        assertThat(eventStore.queryLatency(EventStore.ALL_QUERY).count()).isEqualTo(1);
+        assertThat(eventStore.queryLatency(EventStore.TYPE_QUERY).count()).isEqualTo(1);
+        assertThat(eventStore.queryLatency(EventStore.INSTANT_QUERY).count()).isZero();
+        eventStore.close();
+    }
+
+    @Test
+    public void should_maintain_projections_as_events_are_stored() {
+        Instant now = now();
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now))) {
+            eventStore
+                    .store("name.lemerdy.sebastian.typeA", "data_0")
+                    .store("name.lemerdy.sebastian.typeB", "data_1");
+            Supplier<Long> countOfA = eventStore.project("countOfA", "name.lemerdy.sebastian.typeA", Projection.count());
+            Supplier<Optional<Event>> latest = eventStore.project("latest", Projection.latest());
+
+            assertThat(countOfA.get()).isEqualTo(1);
+            assertThat(latest.get()).contains(new Event(now.plusSeconds(1), "name.lemerdy.sebastian.typeB", "data_1"));
+
+            eventStore
+                    .store("name.lemerdy.sebastian.typeA", "data_2")
+                    .store(asList(new NewEvent("name.lemerdy.sebastian.typeA", "data_3"), new NewEvent("name.lemerdy.sebastian.typeB", "data_4")));
+
+            assertThat(countOfA.get()).isEqualTo(3);
+            assertThat(latest.get()).contains(new Event(now.plusSeconds(3), "name.lemerdy.sebastian.typeB", "data_4"));
+            assertThat(Projection.latest().decode(Projection.latest().encode(latest.get()))).isEqualTo(latest.get());
+            assertThatThrownBy(() -> eventStore.project("latest", Projection.count())).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    public void should_stop_a_failing_projection_without_failing_writers() {
+        Projection<Long> failing = new CountProjection() {
+            @Override
+            public Long apply(Long count, Event event) {
+                if (event.data.equals("poison")) {
+                    throw new IllegalStateException("cannot fold " + event.data);
+                }
+                return super.apply(count, event);
+            }
+        };
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now()), FsyncPolicy.groupCommit())) {
+            Supplier<Long> failingCount = eventStore.project("failing", failing);
+            Supplier<Long> count = eventStore.project("count", Projection.count());
+
+            eventStore
+                    .store("name.lemerdy.sebastian.type", "data_0")
+                    .store("name.lemerdy.sebastian.type", "poison")
+                    .store("name.lemerdy.sebastian.type", "data_2");
+
+            assertThat(eventStore.events()).hasSize(3);
+            assertThat(count.get()).isEqualTo(3);
+            assertThat(failingCount.get()).isEqualTo(1);
+            assertThat(eventStore.projection("failing").flatMap(Projected::failure)).isPresent();
+        }
+    }
+
+    @Test
+    public void should_resume_projections_from_their_checkpoint() {
+        AtomicInteger folded = new AtomicInteger();
+        Projection<Long> count = new CountProjection() {
+            @Override
+            public Long apply(Long count, Event event) {
+                folded.incrementAndGet();
+                return super.apply(count, event);
+            }
+        };
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now()))) {
+            IntStream.range(0, 10).forEach(i -> eventStore.store("name.lemerdy.sebastian.type", "data_" + i));
+            eventStore.project("count", count);
+        }
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now().plusSeconds(60)))) {
+            eventStore.store("name.lemerdy.sebastian.type", "data_10");
+            folded.set(0);
+
+            Supplier<Long> restored = eventStore.project("count", count);
+
+            assertThat(restored.get()).isEqualTo(11);
+            assertThat(folded.get()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void should_deflate_payloads_and_inflate_them_on_read() throws IOException {
+        List<String> payloads = IntStream.range(0, 200)
+                .mapToObj(i -> i % 10 == 0 ? "short_" + i : "{\"customer\": {\"id\": " + i + ", \"name\": \"name_" + i + "\"}, "
+                        + "\"lines\": [{\"product\": \"product\", \"quantity\": 1}, {\"product\": \"product\", \"quantity\": 2}], "
+                        + "\"status\": \"created\", \"currency\": \"EUR\", \"comment\": \"\u00e9\"}")
+                .collect(toList());
+        try (EventStore eventStore = new EventStore(new IncrementingClock(now()), StoreOptions.defaults().withCompression(true))) {
+            payloads.forEach(payload -> eventStore.store("name.lemerdy.sebastian.type", payload));
+        }
+        long journalSize;
+        try (Stream<Path> files = Files.list(Paths.get(".eventstore"))) {
+            journalSize = files.filter(Segment::isSegment).mapToLong(file -> file.toFile().length()).sum();
+        }
+        assertThat(journalSize).isLessThan(payloads.stream().mapToLong(String::length).sum() / 2);
+
+        try (EventStore eventStore = new EventStore(Clock.systemUTC())) {
+            assertThat(eventStore.events()).extracting(Event::getData).isEqualTo(payloads);
+        }
+        try (EventStore eventStore = new EventStore(Clock.systemUTC(), StoreOptions.defaults().withMemoryLimit(1))) {
+            assertThat(eventStore.events()).extracting(Event::getData).isEqualTo(payloads);
+        }
     }
 
 }
@@ -0,0 +1,69 @@
+package name.lemerdy.sebastian.eventstore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GroupCommitTest {
+
+    private static final int WRITERS = 8;
+
+    private ExecutorService executor;
+
+    @Before
+    public void createExecutor() {
+        executor = newFixedThreadPool(WRITERS);
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void should_complete_every_append_accepted_before_close() throws Exception {
+        for (int round = 0; round < 1000; round++) {
+            GroupCommit groupCommit = new GroupCommit(batches -> {
+            }, 64);
+            List<CompletableFuture<Void>> accepted = new CopyOnWriteArrayList<>();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> writers = new ArrayList<>();
+            for (int writer = 0; writer < WRITERS; writer++) {
+                writers.add(executor.submit((Callable<Void>) () -> {
+                    start.await();
+                    try {
+                        while (true) {
+                            accepted.add(groupCommit.append(emptyList(), () -> {
+                            }));
+                        }
+                    } catch (IllegalStateException e) {
+                        // closed
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            groupCommit.close();
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+
+            assertThat(accepted).as("round %d", round).allMatch(CompletableFuture::isDone);
+        }
+    }
+
+}
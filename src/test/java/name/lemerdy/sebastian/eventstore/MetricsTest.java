@@ -0,0 +1,23 @@
+package name.lemerdy.sebastian.eventstore;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsTest {
+
+    @Test
+    public void should_record_latencies_in_logarithmic_buckets() {
+        Metrics.Histogram histogram = new Metrics().histogram("latency_seconds", "latency");
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+
+        assertThat(histogram.count()).isEqualTo(1000);
+        assertThat(histogram.quantile(0.5)).isBetween(500_000L, 500_000L * 9 / 8);
+        assertThat(histogram.quantile(0.99)).isBetween(990_000L, 990_000L * 9 / 8);
+        assertThat(histogram.quantile(1)).isBetween(1_000_000L, 1_000_000L * 9 / 8);
+        assertThat(Metrics.Histogram.upperBound(Metrics.Histogram.bucket(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+    }
+
+}
@@ -0,0 +1,64 @@
+package name.lemerdy.sebastian.eventstore;
+
+import name.lemerdy.sebastian.eventstore.testtools.DataFileRemover;
+import name.lemerdy.sebastian.eventstore.testtools.IncrementingClock;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Instant;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.Instant.now;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MigrationTest {
+
+    @Rule
+    public DataFileRemover dataFileRemover = new DataFileRemover();
+
+    @Test
+    public void should_migrate_single_file_log_to_binary_segments() throws IOException {
+        Instant now = now();
+        Files.write(Paths.get(".eventstore"), ("" +
+                now + ",name.lemerdy.sebastian.type,data_0\\nnew line\n" +
+                now.plusSeconds(1) + ",name.lemerdy.sebastian.type,data_1\n" +
+                now.plusSeconds(2) + ",name.lemerdy.sebastian.type,da").getBytes(UTF_8));
+
+        Migration.main(new String[0]);
+
+        assertThat(Paths.get(".eventstore")).isDirectory();
+        assertThat(Migration.isNeeded(Paths.get(".eventstore"))).isFalse();
+        assertThat(new EventStore(Clock.systemUTC()).events()).containsExactly(
+                new Event(now.plusSeconds(0), "name.lemerdy.sebastian.type", "data_0\nnew line"),
+                new Event(now.plusSeconds(1), "name.lemerdy.sebastian.type", "data_1"));
+    }
+
+    @Test
+    public void should_put_migrated_segments_in_place_after_a_crash_between_renames() throws IOException {
+        Instant now = now();
+        try (EventStore migrated = new EventStore(new IncrementingClock(now), StoreOptions.defaults().withPath(Paths.get(".eventstore.migrated")))) {
+            migrated.store("name.lemerdy.sebastian.type", "data_0");
+        }
+        Files.write(Paths.get(".eventstore.previous"), (now + ",name.lemerdy.sebastian.type,data_0\n").getBytes(UTF_8));
+
+        assertThat(new EventStore(Clock.systemUTC()).events()).containsExactly(new Event(now, "name.lemerdy.sebastian.type", "data_0"));
+        assertThat(Paths.get(".eventstore.migrated")).doesNotExist();
+        assertThat(Paths.get(".eventstore.previous")).doesNotExist();
+    }
+
+    @Test
+    public void should_migrate_again_the_previous_journal_when_its_segments_are_incomplete() throws IOException {
+        Instant now = now();
+        Files.createDirectories(Paths.get(".eventstore.migrating"));
+        Files.write(Paths.get(".eventstore.previous"), (now + ",name.lemerdy.sebastian.type,data_0\n").getBytes(UTF_8));
+
+        assertThat(new EventStore(Clock.systemUTC()).events()).containsExactly(new Event(now, "name.lemerdy.sebastian.type", "data_0"));
+        assertThat(Paths.get(".eventstore.migrating")).doesNotExist();
+        assertThat(Paths.get(".eventstore.previous")).doesNotExist();
+    }
+
+}
@@ -0,0 +1,26 @@
+package name.lemerdy.sebastian.eventstore;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PayloadCacheTest {
+
+    @Test
+    public void should_give_a_second_chance_to_payloads_read_since_they_were_cached() {
+        PayloadCache cache = new PayloadCache(200, record -> "loaded_" + record);
+        cache.put(0, "a");
+        cache.put(1, "b");
+
+        assertThat(cache.get(0)).isEqualTo("a");
+        cache.put(2, "c");
+
+        assertThat(cache.peek(0)).isEqualTo("a");
+        assertThat(cache.peek(1)).isEqualTo("loaded_1");
+        assertThat(cache.peek(2)).isEqualTo("c");
+        assertThat(cache.hits()).isEqualTo(1);
+        assertThat(cache.evictions()).isEqualTo(1);
+        assertThat(cache.bytes()).isLessThanOrEqualTo(200);
+    }
+
+}
@@ -3,17 +3,23 @@ package name.lemerdy.sebastian.eventstore.testtools;
 import org.junit.rules.ExternalResource;
 
 import java.io.File;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public class DataFileRemover extends ExternalResource {
 
     @Override
     protected void after() {
-        File file = new File(".eventstore");
+        delete(new File(".eventstore"));
+    }
+
+    private static void delete(File file) {
         if (!file.exists()) {
             return;
         }
+        Optional.ofNullable(file.listFiles()).map(Stream::of).orElseGet(Stream::empty).forEach(DataFileRemover::delete);
         if (!file.delete()) {
-            throw new IllegalStateException("unable to delete data file");
+            throw new IllegalStateException("unable to delete data file " + file);
         }
     }
 